@@ -0,0 +1,204 @@
+package com.lada.oauthlogin.bench;
+
+import com.lada.oauthlogin.model.AuthProvider.Provider;
+import org.flywaydb.core.Flyway;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.jdbc.DatabaseDriver;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Identity lookups against the Flyway schema at production-like volume. The first run generates
+ * {@code users} users, each with a GitHub identity and every other one also linked to Google, and
+ * later runs reuse the data. Defaults to a file-based H2 database under target/; for PostgreSQL:
+ *
+ * <pre>
+ * -Djmh.args="IdentityLookupBenchmark -jvmArgs -Dbench.jdbc.url=jdbc:postgresql://localhost/bench?reWriteBatchedInserts=true
+ *             -jvmArgs -Dbench.jdbc.user=bench -jvmArgs -Dbench.jdbc.password=bench"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+@Threads(8)
+public class IdentityLookupBenchmark {
+
+    private static final int BATCH = 10_000;
+
+    @Param("10000000")
+    public int users;
+
+    private String url;
+    private String user;
+    private String password;
+
+    @Setup(Level.Trial)
+    public void generate() throws SQLException {
+        url = System.getProperty("bench.jdbc.url", "jdbc:h2:file:./target/bench-identity;CACHE_SIZE=1048576");
+        user = System.getProperty("bench.jdbc.user", "sa");
+        password = System.getProperty("bench.jdbc.password", "");
+
+        String vendor = DatabaseDriver.fromJdbcUrl(url).getId();
+        Flyway.configure()
+                .dataSource(url, user, password)
+                .locations("classpath:db/migration/" + vendor)
+                .load()
+                .migrate();
+
+        try (Connection con = DriverManager.getConnection(url, user, password)) {
+            long existing;
+            try (Statement st = con.createStatement(); ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM users")) {
+                rs.next();
+                existing = rs.getLong(1);
+            }
+            if (existing >= users) {
+                return;
+            }
+            System.out.printf("Generating users %d..%d%n", existing, users);
+            insertUsers(con, existing, vendor);
+            try (Statement st = con.createStatement()) {
+                st.execute(switch (vendor) {
+                    case "postgresql" -> "VACUUM ANALYZE";
+                    case "mysql" -> "ANALYZE TABLE users, auth_providers";
+                    default -> "ANALYZE";
+                });
+            }
+        }
+    }
+
+    private void insertUsers(Connection con, long from, String vendor) throws SQLException {
+        con.setAutoCommit(false);
+        OffsetDateTime now = OffsetDateTime.now(ZoneOffset.UTC);
+        long start = System.nanoTime();
+        try (PreparedStatement insertUser = con.prepareStatement(
+                     "INSERT INTO users (id, email, display_name, avatar_url, bio, created_at, updated_at) VALUES (?, ?, ?, ?, '', ?, ?)");
+             PreparedStatement insertLink = con.prepareStatement(
+                     "INSERT INTO auth_providers (user_id, provider, provider_user_id, provider_email) VALUES (?, ?, ?, ?)")) {
+            for (long n = from; n < users; n++) {
+                long id = n + 1;
+                insertUser.setLong(1, id);
+                insertUser.setString(2, email(n));
+                insertUser.setString(3, "Bench User " + n);
+                insertUser.setString(4, "https://avatars.example/u/" + n);
+                insertUser.setObject(5, now);
+                insertUser.setObject(6, now);
+                insertUser.addBatch();
+
+                addLink(insertLink, id, Provider.GITHUB, Long.toString(n), email(n));
+                if (n % 2 == 0) {
+                    addLink(insertLink, id, Provider.GOOGLE, "g" + n, email(n));
+                }
+
+                if ((n + 1) % BATCH == 0 || n + 1 == users) {
+                    insertUser.executeBatch();
+                    insertLink.executeBatch();
+                    con.commit();
+                    if ((n + 1) % 1_000_000 == 0) {
+                        System.out.printf("  %,d users (%.0f/s)%n", n + 1, (n + 1 - from) / ((System.nanoTime() - start) / 1e9));
+                    }
+                }
+            }
+        }
+        // Ids were assigned explicitly; move the identity past them (MySQL's AUTO_INCREMENT follows on its own)
+        if (!vendor.equals("mysql")) {
+            try (Statement st = con.createStatement()) {
+                st.execute("ALTER TABLE users ALTER COLUMN id RESTART WITH " + (users + 1));
+            }
+        }
+        con.commit();
+        con.setAutoCommit(true);
+    }
+
+    private static void addLink(PreparedStatement ps, long userId, Provider provider, String providerUserId, String email)
+            throws SQLException {
+        ps.setLong(1, userId);
+        ps.setShort(2, provider.code());
+        ps.setString(3, providerUserId);
+        ps.setString(4, email);
+        ps.addBatch();
+    }
+
+    private static String email(long n) {
+        return "benchuser" + n;
+    }
+
+    @State(Scope.Thread)
+    public static class Session {
+
+        Connection con;
+        PreparedStatement byIdentity;
+        PreparedStatement byUser;
+        PreparedStatement byEmail;
+
+        @Setup(Level.Trial)
+        public void open(IdentityLookupBenchmark bench) throws SQLException {
+            con = DriverManager.getConnection(bench.url, bench.user, bench.password);
+            con.setReadOnly(true);
+            byIdentity = con.prepareStatement("SELECT user_id FROM auth_providers WHERE provider = ? AND provider_user_id = ?");
+            byUser = con.prepareStatement("SELECT provider, provider_user_id FROM auth_providers WHERE user_id = ?");
+            byEmail = con.prepareStatement("SELECT id, display_name, avatar_url FROM users WHERE email = ?");
+        }
+
+        @TearDown(Level.Trial)
+        public void close() throws SQLException {
+            con.close();
+        }
+    }
+
+    /** Login: provider identity to user id (covering index, no table access). */
+    @Benchmark
+    public long linkByProviderUserId(Session s) throws SQLException {
+        s.byIdentity.setShort(1, Provider.GITHUB.code());
+        s.byIdentity.setString(2, Long.toString(ThreadLocalRandom.current().nextInt(users)));
+        try (ResultSet rs = s.byIdentity.executeQuery()) {
+            return rs.next() ? rs.getLong(1) : -1;
+        }
+    }
+
+    /** A user's linked providers (user_id index). */
+    @Benchmark
+    public int providersByUserId(Session s) throws SQLException {
+        s.byUser.setLong(1, ThreadLocalRandom.current().nextInt(users) + 1L);
+        int count = 0;
+        try (ResultSet rs = s.byUser.executeQuery()) {
+            while (rs.next()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /** Provisioning's existing-user check (unique email index). */
+    @Benchmark
+    public long userByEmail(Session s) throws SQLException {
+        s.byEmail.setString(1, email(ThreadLocalRandom.current().nextInt(users)));
+        try (ResultSet rs = s.byEmail.executeQuery()) {
+            return rs.next() ? rs.getLong(1) : -1;
+        }
+    }
+}
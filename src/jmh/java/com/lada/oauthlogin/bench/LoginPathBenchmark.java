@@ -0,0 +1,160 @@
+package com.lada.oauthlogin.bench;
+
+import com.lada.oauthlogin.OAuthLoginDemoApplication;
+import com.lada.oauthlogin.controller.ProfileRestController;
+import com.lada.oauthlogin.security.AppUserPrincipal;
+import com.lada.oauthlogin.service.CustomOAuth2UserService;
+import com.lada.oauthlogin.service.DelegatingOidcUserService;
+import com.lada.oauthlogin.support.ProviderEmulator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.oauth2.client.authentication.OAuth2AuthenticationToken;
+import org.springframework.security.oauth2.client.oidc.userinfo.OidcUserRequest;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.client.registration.ClientRegistrationRepository;
+import org.springframework.security.oauth2.client.userinfo.OAuth2UserRequest;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.security.oauth2.core.oidc.OidcIdToken;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Login and profile hot paths against embedded H2 and the local provider emulator (no added latency).
+ * Throughput plus sampled latency percentiles; add {@code -prof gc} for the allocation rate:
+ * <pre>mvn -Pjmh test-compile exec:exec -Djmh.args="LoginPathBenchmark -prof gc"</pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class LoginPathBenchmark {
+
+    private static final int RETURNING_USERS = 1_000;
+    private static final int LINKABLE_USERS = 100_000;
+
+    private ProviderEmulator emulator;
+    private ConfigurableApplicationContext context;
+    private CustomOAuth2UserService userService;
+    private DelegatingOidcUserService oidcUserService;
+    private ProfileRestController profileController;
+    private ClientRegistration github;
+    private ClientRegistration google;
+    private Authentication profileAuth;
+
+    // New users start above the pre-provisioned range; linking uses GitHub users not yet linked to Google
+    private final AtomicInteger nextNewUser = new AtomicInteger(1_000_000);
+    private final AtomicInteger nextReturning = new AtomicInteger();
+    private final AtomicInteger nextLinking = new AtomicInteger(RETURNING_USERS);
+    private final AtomicInteger nextBio = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void start() throws Exception {
+        emulator = new ProviderEmulator(Duration.ZERO);
+        context = new SpringApplicationBuilder(OAuthLoginDemoApplication.class)
+                .properties(Map.of(
+                        "server.port", "0",
+                        "spring.datasource.url", "jdbc:h2:mem:bench;DB_CLOSE_DELAY=-1",
+                        "logging.level.root", "WARN",
+                        "spring.security.oauth2.client.registration.github.client-id", "bench",
+                        "spring.security.oauth2.client.registration.github.client-secret", "bench",
+                        "spring.security.oauth2.client.registration.google.client-id", "bench",
+                        "spring.security.oauth2.client.registration.google.client-secret", "bench",
+                        "spring.security.oauth2.client.provider.github.user-info-uri", emulator.baseUrl() + "/github/user",
+                        "spring.security.oauth2.client.provider.google.user-info-uri", emulator.baseUrl() + "/google/userinfo"))
+                .run();
+
+        userService = context.getBean(CustomOAuth2UserService.class);
+        oidcUserService = context.getBean(DelegatingOidcUserService.class);
+        profileController = context.getBean(ProfileRestController.class);
+        ClientRegistrationRepository registrations = context.getBean(ClientRegistrationRepository.class);
+        github = registrations.findByRegistrationId("github");
+        google = registrations.findByRegistrationId("google");
+
+        // Pre-provision GitHub users: 0..999 are the returning pool, the rest are linked to Google one by one
+        // (once exhausted, loadUserLinking degrades to new-user logins; raise LINKABLE_USERS for long runs)
+        for (int n = 0; n < RETURNING_USERS + LINKABLE_USERS; n++) {
+            userService.loadUser(new OAuth2UserRequest(github, token(n)));
+        }
+        AppUserPrincipal principal = userService.loadUser(new OAuth2UserRequest(github, token(0)));
+        profileAuth = new OAuth2AuthenticationToken(principal, principal.getAuthorities(), "github");
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+        emulator.close();
+    }
+
+    @Benchmark
+    public Object loadUserNew() {
+        return userService.loadUser(new OAuth2UserRequest(github, token(nextNewUser.getAndIncrement())));
+    }
+
+    @Benchmark
+    public Object loadUserReturning() {
+        int n = Math.floorMod(nextReturning.getAndIncrement(), RETURNING_USERS);
+        return userService.loadUser(new OAuth2UserRequest(github, token(n)));
+    }
+
+    // Existing GitHub user logs in with Google for the first time (same login identifier)
+    @Benchmark
+    public Object loadUserLinking() {
+        return userService.loadUser(new OAuth2UserRequest(google, token(nextLinking.getAndIncrement())));
+    }
+
+    @Benchmark
+    public Object oidcLoadUser() {
+        int n = Math.floorMod(nextReturning.getAndIncrement(), RETURNING_USERS);
+        return oidcUserService.loadUser(new OidcUserRequest(google, token(n), idToken(n)));
+    }
+
+    @Benchmark
+    public Object profileMe() {
+        return profileController.me(profileAuth, new ServletWebRequest(new MockHttpServletRequest("GET", "/profile-data")));
+    }
+
+    @Benchmark
+    public Object profileUpdate() {
+        return profileController.updateProfile(Map.of("bio", "bio " + nextBio.getAndIncrement()), profileAuth);
+    }
+
+    private static OAuth2AccessToken token(int n) {
+        Instant now = Instant.now();
+        return new OAuth2AccessToken(OAuth2AccessToken.TokenType.BEARER, "tok-" + n, now, now.plusSeconds(3600));
+    }
+
+    private static OidcIdToken idToken(int n) {
+        Instant now = Instant.now();
+        return OidcIdToken.withTokenValue("id-token-" + n)
+                .issuer("https://accounts.google.com")
+                .subject("g" + n)
+                .audience(List.of("bench"))
+                .issuedAt(now)
+                .expiresAt(now.plusSeconds(3600))
+                .claim("email", "loaduser" + n)
+                .claim("name", "Load User " + n)
+                .build();
+    }
+}
@@ -0,0 +1,80 @@
+package com.lada.oauthlogin.bench;
+
+import com.lada.oauthlogin.security.LoginRateLimitFilter;
+import com.lada.oauthlogin.security.LoginRateLimiter;
+import jakarta.servlet.ServletException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.config.oauth2.client.CommonOAuth2Provider;
+import org.springframework.security.oauth2.client.registration.InMemoryClientRegistrationRepository;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-request overhead of {@link LoginRateLimitFilter}: a non-login path (pass-through), an admitted login
+ * spread over 10k client IPs, and a rejected login (429 from an exhausted bucket). Runs on 8 threads so
+ * the CAS contention on the shared provider bucket is included.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Threads(8)
+public class LoginRateLimitBenchmark {
+
+    private static final int CLIENTS = 10_000;
+
+    private LoginRateLimitFilter admitting;
+    private LoginRateLimitFilter rejecting;
+    private String[] clientIps;
+
+    @Setup
+    public void setup() {
+        InMemoryClientRegistrationRepository registrations = new InMemoryClientRegistrationRepository(
+                CommonOAuth2Provider.GITHUB.getBuilder("github").clientId("bench").clientSecret("bench").build());
+        admitting = new LoginRateLimitFilter(new LoginRateLimiter(registrations, true,
+                Integer.MAX_VALUE, Duration.ofSeconds(1), 1000, Integer.MAX_VALUE, Duration.ofSeconds(1), 1000, CLIENTS * 2));
+        rejecting = new LoginRateLimitFilter(new LoginRateLimiter(registrations, true,
+                1, Duration.ofHours(1), 1, 1, Duration.ofHours(1), 1, CLIENTS * 2));
+
+        clientIps = new String[CLIENTS];
+        for (int i = 0; i < CLIENTS; i++) {
+            clientIps[i] = "10.0." + (i >> 8) + "." + (i & 0xff);
+        }
+    }
+
+    @Benchmark
+    public int passThrough() throws ServletException, IOException {
+        return run(admitting, "/profile-data", "10.0.0.1");
+    }
+
+    @Benchmark
+    public int admitted() throws ServletException, IOException {
+        return run(admitting, "/oauth2/authorization/github", clientIps[ThreadLocalRandom.current().nextInt(CLIENTS)]);
+    }
+
+    @Benchmark
+    public int rejected() throws ServletException, IOException {
+        return run(rejecting, "/oauth2/authorization/github", "10.0.0.1");
+    }
+
+    // The mock request/response allocation is part of every variant, so compare against passThrough
+    private static int run(LoginRateLimitFilter filter, String uri, String clientIp) throws ServletException, IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", uri);
+        request.setRemoteAddr(clientIp);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, new MockFilterChain());
+        return response.getStatus();
+    }
+}
@@ -0,0 +1,177 @@
+package com.lada.oauthlogin.bench;
+
+import com.lada.oauthlogin.security.AppOidcUserPrincipal;
+import com.lada.oauthlogin.security.AppUserPrincipal;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.oauth2.core.oidc.OidcIdToken;
+import org.springframework.security.oauth2.core.oidc.OidcUserInfo;
+import org.springframework.security.oauth2.core.oidc.user.DefaultOidcUser;
+import org.springframework.security.oauth2.core.user.DefaultOAuth2User;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.net.URI;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Retained heap (and Java-serialized size) per session principal, before and after the compact
+ * principal. Reported as the bytesPerSession / serializedBytes secondary results.
+ * <pre>mvn -Pjmh test-compile exec:exec -Djmh.args="PrincipalFootprint"</pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = {"-XX:+UseSerialGC", "-Xmx2g"})
+public class PrincipalFootprintBenchmark {
+
+    private static final int SESSIONS = 100_000;
+    private static final List<GrantedAuthority> AUTHORITIES = List.of(new SimpleGrantedAuthority("ROLE_USER"));
+
+    @Param({"github-default", "github-compact", "google-default", "google-compact"})
+    public String variant;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Footprint {
+        public long bytesPerSession;
+        public long serializedBytes;
+    }
+
+    @Benchmark
+    public Object[] retain(Footprint footprint) throws IOException {
+        long before = usedAfterGc();
+        Object[] live = new Object[SESSIONS];
+        for (int i = 0; i < SESSIONS; i++) {
+            live[i] = create(i);
+        }
+        long after = usedAfterGc();
+        footprint.bytesPerSession = (after - before) / SESSIONS;
+        footprint.serializedBytes = serializedSize(live[0]);
+        return live;
+    }
+
+    private Object create(int i) {
+        return switch (variant) {
+            case "github-default" -> {
+                Map<String, Object> attrs = githubAttributes(i);
+                attrs.put("email", "octocat" + i);
+                attrs.put("provider", "github");
+                attrs.put("userId", (long) i);
+                yield new DefaultOAuth2User(AUTHORITIES, attrs, "id");
+            }
+            case "github-compact" -> new AppUserPrincipal(i, "github", "octocat" + i, "The Octocat " + i,
+                    "https://avatars.githubusercontent.com/u/" + i + "?v=4", String.valueOf(i), AUTHORITIES, null);
+            case "google-default" -> {
+                Map<String, Object> attrs = googleAttributes(i);
+                attrs.put("provider", "google");
+                attrs.put("userId", (long) i);
+                yield new DefaultOidcUser(AUTHORITIES, idToken(i), new OidcUserInfo(attrs), "sub");
+            }
+            case "google-compact" -> new AppOidcUserPrincipal(new AppUserPrincipal(i, "google", "user" + i + "@gmail.com",
+                    "Google User " + i, "https://lh3.googleusercontent.com/a/" + i, "1" + i, AUTHORITIES, null), idToken(i));
+            default -> throw new IllegalArgumentException(variant);
+        };
+    }
+
+    // Shape of the GitHub /user response
+    private static Map<String, Object> githubAttributes(int i) {
+        Map<String, Object> a = new HashMap<>();
+        String login = "octocat" + i;
+        String api = "https://api.github.com/users/" + login;
+        a.put("login", login);
+        a.put("id", i);
+        a.put("node_id", "MDQ6VXNlcj" + i);
+        a.put("avatar_url", "https://avatars.githubusercontent.com/u/" + i + "?v=4");
+        a.put("gravatar_id", "");
+        a.put("url", api);
+        a.put("html_url", "https://github.com/" + login);
+        a.put("followers_url", api + "/followers");
+        a.put("following_url", api + "/following{/other_user}");
+        a.put("gists_url", api + "/gists{/gist_id}");
+        a.put("starred_url", api + "/starred{/owner}{/repo}");
+        a.put("subscriptions_url", api + "/subscriptions");
+        a.put("organizations_url", api + "/orgs");
+        a.put("repos_url", api + "/repos");
+        a.put("events_url", api + "/events{/privacy}");
+        a.put("received_events_url", api + "/received_events");
+        a.put("type", "User");
+        a.put("user_view_type", "public");
+        a.put("site_admin", false);
+        a.put("name", "The Octocat " + i);
+        a.put("company", "@github");
+        a.put("blog", "https://github.blog");
+        a.put("location", "San Francisco");
+        a.put("hireable", null);
+        a.put("bio", "There once was...");
+        a.put("twitter_username", null);
+        a.put("public_repos", 8);
+        a.put("public_gists", 8);
+        a.put("followers", 9999);
+        a.put("following", 9);
+        a.put("created_at", "2011-01-25T18:44:36Z");
+        a.put("updated_at", "2024-01-22T12:00:00Z");
+        return a;
+    }
+
+    private static Map<String, Object> googleAttributes(int i) {
+        Map<String, Object> a = new HashMap<>();
+        a.put("sub", "1" + i);
+        a.put("name", "Google User " + i);
+        a.put("given_name", "Google");
+        a.put("family_name", "User " + i);
+        a.put("picture", "https://lh3.googleusercontent.com/a/" + i);
+        a.put("email", "user" + i + "@gmail.com");
+        a.put("email_verified", true);
+        return a;
+    }
+
+    private static OidcIdToken idToken(int i) {
+        Instant iat = Instant.now();
+        Map<String, Object> claims = new HashMap<>(googleAttributes(i));
+        try {
+            claims.put("iss", URI.create("https://accounts.google.com").toURL());
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        claims.put("azp", "client-id.apps.googleusercontent.com");
+        claims.put("aud", List.of("client-id.apps.googleusercontent.com"));
+        claims.put("at_hash", "HK6E_P6Dh8Y93mRNtsDB1Q" + i);
+        claims.put("nonce", "n-0S6_WzA2Mj" + i);
+        claims.put("iat", iat);
+        claims.put("exp", iat.plusSeconds(3600));
+        String tokenValue = "eyJhbGciOiJSUzI1NiIsImtpZCI6IjEifQ." + "x".repeat(700) + i + "." + "s".repeat(342);
+        return new OidcIdToken(tokenValue, iat, iat.plusSeconds(3600), claims);
+    }
+
+    private static long usedAfterGc() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    private static long serializedSize(Object o) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(o);
+        }
+        return bytes.size();
+    }
+}
@@ -0,0 +1,61 @@
+package com.lada.oauthlogin.bench;
+
+import com.lada.oauthlogin.security.SessionTokenService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpSession;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextImpl;
+import org.springframework.security.web.context.HttpSessionSecurityContextRepository;
+
+import java.time.Duration;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-request authentication cost: session mode (security context loaded from the HttpSession)
+ * versus stateless mode (HMAC verify + decode of the AUTH_TOKEN cookie).
+ * The session numbers exclude the container's session lookup and any remote session store.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TokenAuthBenchmark {
+
+    private SessionTokenService tokens;
+    private String token;
+    private HttpSessionSecurityContextRepository sessionRepository;
+    private MockHttpSession session;
+
+    @Setup
+    public void setup() {
+        String secret = Base64.getEncoder().encodeToString("benchmark-secret-benchmark-secret".getBytes());
+        tokens = new SessionTokenService(secret, List.of(), Duration.ofHours(8));
+        token = tokens.issue(42L, "github", "octocat", "583231");
+
+        SecurityContext context = new SecurityContextImpl(tokens.authentication(tokens.verify(token).orElseThrow()));
+        sessionRepository = new HttpSessionSecurityContextRepository();
+        session = new MockHttpSession();
+        session.setAttribute(HttpSessionSecurityContextRepository.SPRING_SECURITY_CONTEXT_KEY, context);
+    }
+
+    @Benchmark
+    public SecurityContext sessionMode() {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setSession(session);
+        return sessionRepository.loadDeferredContext(request).get();
+    }
+
+    @Benchmark
+    public Authentication statelessMode() {
+        return tokens.authentication(tokens.verify(token).orElseThrow());
+    }
+}
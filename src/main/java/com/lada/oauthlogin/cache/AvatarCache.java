@@ -0,0 +1,363 @@
+package com.lada.oauthlogin.cache;
+
+import com.lada.oauthlogin.http.ProviderHttpClients;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.client.RestClient;
+
+import javax.imageio.ImageIO;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * Resized provider avatars on local disk, one PNG per user named {@code <userId>-<hash of the source URL>.png}.
+ * Logins call {@link #refreshIfChanged}; a thumbnail is fetched in the background only when the provider
+ * URL's hash differs from the cached one. {@link #refresh} does the same fetch on the caller's thread and
+ * throws when it fails, for callers that retry. Only URLs on {@code allowed-hosts} (the providers' avatar
+ * CDNs) are fetched, and redirects are not followed, so an imported or edited avatar URL cannot make the
+ * server request internal addresses. Total size is bounded by {@code max-size}, evicting least
+ * recently served files first. A file handed out within the last few seconds is never deleted, since the
+ * connector may still be about to open it (sendfile); the cache can run over its limit for that long.
+ * The index is rebuilt from the directory on startup.
+ */
+@Component
+public class AvatarCache {
+
+    private static final Logger log = LoggerFactory.getLogger(AvatarCache.class);
+
+    public record Thumbnail(Path path, String version, long size) {}
+
+    // How long a path handed to a caller stays on disk: covers Tomcat opening it after the servlet returns
+    private static final long IN_USE_NANOS = Duration.ofSeconds(10).toNanos();
+
+    private record Retired(Thumbnail thumbnail, long retiredAtNanos) {}
+
+    private final Path directory;
+    private final int sizePx;
+    private final long maxBytes;
+    private final int maxSourceBytes;
+    private final Semaphore fetchPermits;
+    private final RestClient rest;
+    private final List<String> allowedHosts;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<Long, Thumbnail> index = new LinkedHashMap<>(256, 0.75f, true);
+    // Last get() or store() per entry, in System.nanoTime(); follows the index's access order
+    private final HashMap<Long, Long> accessedAt = new HashMap<>();
+    // Replaced versions, deleted once they can no longer be in use
+    private final ArrayDeque<Retired> retired = new ArrayDeque<>();
+    private final Set<Long> pending = ConcurrentHashMap.newKeySet();
+    private long totalBytes;
+
+    public AvatarCache(ProviderHttpClients providerHttpClients,
+                       @Value("${app.avatar.cache-dir:${java.io.tmpdir}/oauth-login-avatars}") Path directory,
+                       @Value("${app.avatar.size-px:192}") int sizePx,
+                       @Value("${app.avatar.max-size:256MB}") DataSize maxSize,
+                       @Value("${app.avatar.max-source-size:2MB}") DataSize maxSourceSize,
+                       @Value("${app.avatar.max-concurrent-fetches:4}") int maxConcurrentFetches,
+                       @Value("${app.avatar.allowed-hosts:avatars.githubusercontent.com,*.googleusercontent.com}")
+                       List<String> allowedHosts) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.sizePx = sizePx;
+        this.maxBytes = maxSize.toBytes();
+        this.maxSourceBytes = (int) maxSourceSize.toBytes();
+        this.fetchPermits = new Semaphore(maxConcurrentFetches);
+        this.allowedHosts = allowedHosts.stream()
+                .map(h -> h.trim().toLowerCase(Locale.ROOT))
+                .filter(h -> !h.isEmpty())
+                .toList();
+        // Avatar CDNs are not token or user-info endpoints, so these go through the shared "other" client
+        this.rest = RestClient.builder()
+                .requestFactory(providerHttpClients.requestFactory())
+                .requestInterceptor(providerHttpClients.guard())
+                .build();
+        load();
+    }
+
+    public Thumbnail get(Long userId) {
+        lock.lock();
+        try {
+            Thumbnail thumbnail = index.get(userId);
+            if (thumbnail != null) {
+                accessedAt.put(userId, System.nanoTime());
+            }
+            return thumbnail;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Schedules a background fetch unless the cached thumbnail was made from this same URL. */
+    public void refreshIfChanged(Long userId, String avatarUrl) {
+        if (userId == null || avatarUrl == null || !isAllowedSource(avatarUrl)) {
+            return;
+        }
+        String version = version(avatarUrl);
+        Thumbnail current = get(userId);
+        if (current != null && current.version().equals(version)) {
+            return;
+        }
+        if (pending.add(userId)) {
+            Thread.ofVirtual().name("avatar-fetch-", userId).start(() -> {
+                try {
+                    fetch(userId, avatarUrl, version);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (Exception e) {
+                    log.warn("Avatar fetch failed for user {}: {}", userId, e.toString());
+                } finally {
+                    pending.remove(userId);
+                }
+            });
+        }
+    }
+
+    /**
+     * Fetches the thumbnail now unless the cached one was made from this same URL; a failed fetch throws.
+     * A URL on a host that is not allowed is skipped, since retrying it cannot succeed.
+     */
+    public void refresh(Long userId, String avatarUrl) throws IOException, InterruptedException {
+        if (userId == null || !isAllowedSource(avatarUrl)) {
+            return;
+        }
+        String version = version(avatarUrl);
+        Thumbnail current = get(userId);
+        if (current == null || !current.version().equals(version)) {
+            fetch(userId, avatarUrl, version);
+        }
+    }
+
+    /** An http(s) URL on one of {@code app.avatar.allowed-hosts}; {@code *.example.com} matches subdomains. */
+    public boolean isAllowedSource(String avatarUrl) {
+        if (avatarUrl == null || avatarUrl.isBlank()) {
+            return false;
+        }
+        URI uri;
+        try {
+            uri = URI.create(avatarUrl.trim());
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        String scheme = uri.getScheme();
+        String host = uri.getHost();
+        if (host == null || !("https".equalsIgnoreCase(scheme) || "http".equalsIgnoreCase(scheme)) || uri.getUserInfo() != null) {
+            return false;
+        }
+        String h = host.toLowerCase(Locale.ROOT);
+        for (String allowed : allowedHosts) {
+            if (allowed.startsWith("*.") ? h.endsWith(allowed.substring(1)) : h.equals(allowed)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public long totalBytes() {
+        lock.lock();
+        try {
+            return totalBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int entries() {
+        lock.lock();
+        try {
+            return index.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void fetch(Long userId, String avatarUrl, String version) throws IOException, InterruptedException {
+        fetchPermits.acquire();
+        try {
+            store(userId, version, fetch(avatarUrl));
+        } finally {
+            fetchPermits.release();
+        }
+    }
+
+    private BufferedImage fetch(String avatarUrl) throws IOException {
+        if (!isAllowedSource(avatarUrl)) {
+            throw new IOException("Avatar host not allowed: " + avatarUrl);
+        }
+        // Read through a capped stream, so an oversized or endless body costs at most max-source-size of memory
+        byte[] body = rest.get().uri(URI.create(avatarUrl)).exchange((request, response) -> {
+            if (!response.getStatusCode().is2xxSuccessful()) {
+                throw new IOException("Avatar fetch returned " + response.getStatusCode().value());
+            }
+            if (response.getHeaders().getContentLength() > maxSourceBytes) {
+                throw new IOException("Avatar larger than " + maxSourceBytes + " bytes");
+            }
+            try (InputStream in = response.getBody()) {
+                byte[] bytes = in.readNBytes(maxSourceBytes + 1);
+                if (bytes.length > maxSourceBytes) {
+                    throw new IOException("Avatar larger than " + maxSourceBytes + " bytes");
+                }
+                return bytes;
+            }
+        });
+        BufferedImage source = ImageIO.read(new ByteArrayInputStream(body));
+        if (source == null) {
+            throw new IOException("Unsupported avatar image format");
+        }
+        return resize(source);
+    }
+
+    private BufferedImage resize(BufferedImage source) {
+        double scale = Math.min(1.0, (double) sizePx / Math.max(source.getWidth(), source.getHeight()));
+        int width = Math.max(1, (int) Math.round(source.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(source.getHeight() * scale));
+        BufferedImage target = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = target.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            g.dispose();
+        }
+        return target;
+    }
+
+    // Written to a temp file and moved into place, so a concurrent download never sees a partial file
+    private void store(Long userId, String version, BufferedImage image) throws IOException {
+        Path target = directory.resolve(userId + "-" + version + ".png");
+        Path temp = Files.createTempFile(directory, "avatar", ".tmp");
+        try {
+            ImageIO.write(image, "png", temp.toFile());
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        Thumbnail thumbnail = new Thumbnail(target, version, Files.size(target));
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            Thumbnail previous = index.put(userId, thumbnail);
+            accessedAt.put(userId, now);
+            totalBytes += thumbnail.size();
+            if (previous != null && !previous.path().equals(target)) {
+                retired.add(new Retired(previous, now));
+            } else if (previous != null) {
+                totalBytes -= previous.size();
+            }
+            evict();
+        } finally {
+            lock.unlock();
+        }
+        log.debug("Stored avatar thumbnail for user {} ({} bytes)", userId, thumbnail.size());
+    }
+
+    // Caller holds the lock; the just-stored entry is the most recent, so it goes last.
+    // Entries are in access order, so once the eldest was used within IN_USE_NANOS all the others were too
+    private void evict() {
+        long now = System.nanoTime();
+        while (!retired.isEmpty() && now - retired.peek().retiredAtNanos() >= IN_USE_NANOS) {
+            delete(retired.poll().thumbnail());
+        }
+        var it = index.entrySet().iterator();
+        while (totalBytes > maxBytes && index.size() > 1 && it.hasNext()) {
+            var eldest = it.next();
+            Long at = accessedAt.get(eldest.getKey());
+            if (at != null && now - at < IN_USE_NANOS) {
+                break;
+            }
+            it.remove();
+            accessedAt.remove(eldest.getKey());
+            delete(eldest.getValue());
+        }
+    }
+
+    private void delete(Thumbnail thumbnail) {
+        totalBytes -= thumbnail.size();
+        try {
+            Files.deleteIfExists(thumbnail.path());
+        } catch (IOException e) {
+            log.warn("Could not delete avatar {}: {}", thumbnail.path(), e.toString());
+        }
+    }
+
+    // Oldest files first, so eviction order after a restart follows modification time
+    private void load() throws IOException {
+        try (Stream<Path> temps = Files.list(directory)) {
+            // Left behind by a fetch that was interrupted by shutdown
+            for (Path temp : temps.filter(p -> p.getFileName().toString().endsWith(".tmp")).toList()) {
+                Files.deleteIfExists(temp);
+            }
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(p -> p.getFileName().toString().endsWith(".png"))
+                    .sorted(Comparator.comparingLong(AvatarCache::lastModified))
+                    .forEach(p -> {
+                        String name = p.getFileName().toString();
+                        int dash = name.indexOf('-');
+                        try {
+                            Long userId = Long.valueOf(name.substring(0, dash));
+                            Thumbnail thumbnail = new Thumbnail(p, name.substring(dash + 1, name.length() - 4), Files.size(p));
+                            Thumbnail previous = index.put(userId, thumbnail);
+                            totalBytes += thumbnail.size();
+                            if (previous != null) {
+                                delete(previous);
+                            }
+                        } catch (NumberFormatException | IndexOutOfBoundsException | IOException e) {
+                            log.debug("Ignoring unexpected file {} in avatar cache", p);
+                        }
+                    });
+        }
+        lock.lock();
+        try {
+            evict();
+        } finally {
+            lock.unlock();
+        }
+        log.info("Avatar cache at {}: {} thumbnails, {} bytes", directory, index.size(), totalBytes);
+    }
+
+    private static long lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path).toMillis();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static String version(String avatarUrl) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(avatarUrl.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 8);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
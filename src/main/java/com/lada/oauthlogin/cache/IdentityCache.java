@@ -0,0 +1,88 @@
+package com.lada.oauthlogin.cache;
+
+import com.lada.oauthlogin.model.AuthProvider.Provider;
+import com.lada.oauthlogin.model.User;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.Locale;
+
+import static com.lada.oauthlogin.support.TransactionHooks.afterCommit;
+
+/**
+ * In-process cache for the login and profile lookups.
+ * Tier one maps (provider, providerUserId) to the linked user; tier two maps normalized email to a user snapshot.
+ * The cache is per node: a profile edit only evicts the snapshot on the node that handled it, so other nodes
+ * can serve the old profile for up to {@code app.identity-cache.user-ttl}. Links never change once written
+ * and keep the longer {@code app.identity-cache.ttl}.
+ */
+@Component
+public class IdentityCache {
+
+    public record CachedUser(Long id, String email, String displayName, String avatarUrl,
+                             String bio, ZonedDateTime updatedAt) {
+        public static CachedUser of(User user) {
+            return new CachedUser(user.getId(), user.getEmail(), user.getDisplayName(),
+                    user.getAvatarUrl(), user.getBio(), user.getUpdatedAt());
+        }
+    }
+
+    public record ProviderLink(Long userId, String email) {}
+
+    public record Stats(long hits, long misses, long evictions, int size) {}
+
+    private record ProviderKey(Provider provider, String providerUserId) {}
+
+    private final BoundedTtlCache<ProviderKey, ProviderLink> links;
+    private final BoundedTtlCache<String, CachedUser> users;
+
+    public IdentityCache(@Value("${app.identity-cache.max-size:10000}") int maxSize,
+                         @Value("${app.identity-cache.ttl:10m}") Duration ttl,
+                         @Value("${app.identity-cache.user-ttl:30s}") Duration userTtl) {
+        this.links = new BoundedTtlCache<>(maxSize, ttl);
+        this.users = new BoundedTtlCache<>(maxSize, userTtl);
+    }
+
+    public static String normalizeEmail(String email) {
+        return email == null ? null : email.trim().toLowerCase(Locale.ROOT);
+    }
+
+    public ProviderLink getLink(Provider provider, String providerUserId) {
+        return links.get(new ProviderKey(provider, providerUserId));
+    }
+
+    public CachedUser getUser(String email) {
+        return users.get(normalizeEmail(email));
+    }
+
+    public void putLink(Provider provider, String providerUserId, Long userId, String email) {
+        ProviderKey key = new ProviderKey(provider, providerUserId);
+        ProviderLink link = new ProviderLink(userId, normalizeEmail(email));
+        afterCommit(() -> links.put(key, link));
+    }
+
+    public void putUser(User user) {
+        putUser(CachedUser.of(user));
+    }
+
+    public void putUser(CachedUser snapshot) {
+        afterCommit(() -> users.put(normalizeEmail(snapshot.email()), snapshot));
+    }
+
+    public void evictUser(String email) {
+        String key = normalizeEmail(email);
+        users.invalidate(key);
+        // Evict again once the surrounding transaction is done so a concurrent reader cannot re-cache the old row
+        afterCommit(() -> users.invalidate(key));
+    }
+
+    public Stats linkStats() {
+        return new Stats(links.hitCount(), links.missCount(), links.evictionCount(), links.size());
+    }
+
+    public Stats userStats() {
+        return new Stats(users.hitCount(), users.missCount(), users.evictionCount(), users.size());
+    }
+}
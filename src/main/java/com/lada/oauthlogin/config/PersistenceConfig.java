@@ -0,0 +1,9 @@
+package com.lada.oauthlogin.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.PropertySource;
+
+@Configuration
+@PropertySource("classpath:persistence-defaults.properties")
+public class PersistenceConfig {
+}
@@ -0,0 +1,92 @@
+package com.lada.oauthlogin.config;
+
+import com.lada.oauthlogin.datasource.H2ReplicationSimulator;
+import com.lada.oauthlogin.datasource.ReplicaRoutingDataSource;
+import com.zaxxer.hikari.HikariDataSource;
+import org.flywaydb.core.Flyway;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.boot.jdbc.DatabaseDriver;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Read replicas, enabled by {@code app.datasource.replica.urls}. The application {@link DataSource} is a
+ * {@link LazyConnectionDataSourceProxy} over the primary pool: connections of read-only transactions are
+ * taken from {@link ReplicaRoutingDataSource} instead, everything else (including Flyway and any work
+ * outside a transaction) uses the primary.
+ */
+@Configuration
+@ConditionalOnProperty(name = "app.datasource.replica.urls")
+public class ReplicaDataSourceConfig {
+
+    // Same settings as Boot's own pool: spring.datasource.* plus spring.datasource.hikari.*
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    // Closed with the routing data source (inferred close method)
+    @Bean
+    public ReplicaRoutingDataSource replicaRoutingDataSource(@Qualifier("primaryDataSource") DataSource primary,
+                                                             DataSourceProperties properties,
+                                                             @Value("${app.datasource.replica.urls}") List<String> urls,
+                                                             @Value("${app.datasource.replica.username:${spring.datasource.username:}}") String username,
+                                                             @Value("${app.datasource.replica.password:${spring.datasource.password:}}") String password,
+                                                             @Value("${app.datasource.replica.max-pool-size:10}") int maxPoolSize,
+                                                             @Value("${app.datasource.replica.max-lag:2s}") Duration maxLag,
+                                                             // Development only: replicas that are separate empty databases need the schema
+                                                             @Value("${app.datasource.replica.migrate:false}") boolean migrate) {
+        List<DataSource> replicas = new ArrayList<>();
+        for (String url : urls) {
+            if (url.isBlank()) {
+                continue;
+            }
+            HikariDataSource replica = DataSourceBuilder.create(properties.getClassLoader())
+                    .type(HikariDataSource.class)
+                    .url(url.trim())
+                    .username(username)
+                    .password(password)
+                    .build();
+            replica.setPoolName("replica-" + replicas.size());
+            replica.setMaximumPoolSize(maxPoolSize);
+            replica.setReadOnly(true);
+            if (migrate) {
+                Flyway.configure()
+                        .dataSource(url.trim(), username, password)
+                        .locations("classpath:db/migration/" + DatabaseDriver.fromJdbcUrl(url.trim()).getId())
+                        .load()
+                        .migrate();
+            }
+            replicas.add(replica);
+        }
+        return new ReplicaRoutingDataSource(primary, replicas, maxLag);
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(@Qualifier("primaryDataSource") DataSource primary, ReplicaRoutingDataSource replicas) {
+        LazyConnectionDataSourceProxy proxy = new LazyConnectionDataSourceProxy(primary);
+        proxy.setReadOnlyDataSource(replicas);
+        return proxy;
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "app.datasource.replica.simulated-lag-ms")
+    public H2ReplicationSimulator h2ReplicationSimulator(@Qualifier("primaryDataSource") DataSource primary,
+                                                         ReplicaRoutingDataSource replicas) {
+        return new H2ReplicationSimulator(primary, replicas.replicaPools());
+    }
+}
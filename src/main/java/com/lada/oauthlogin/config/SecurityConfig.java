@@ -1,15 +1,49 @@
 package com.lada.oauthlogin.config;
 
+import com.lada.oauthlogin.cache.IdentityCache;
+import com.lada.oauthlogin.datasource.ReadYourWrites;
+import com.lada.oauthlogin.datasource.ReadYourWritesFilter;
+import com.lada.oauthlogin.http.ProviderHttpClients;
+import com.lada.oauthlogin.security.AppUserPrincipal;
+import com.lada.oauthlogin.security.LoginRateLimitFilter;
+import com.lada.oauthlogin.security.LoginRateLimiter;
+import com.lada.oauthlogin.security.SessionTokenAuthenticationFilter;
+import com.lada.oauthlogin.security.SessionTokenService;
+import com.lada.oauthlogin.security.TokenIssuingSuccessHandler;
 import com.lada.oauthlogin.service.CustomOAuth2UserService;
 import com.lada.oauthlogin.service.DelegatingOidcUserService;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.converter.FormHttpMessageConverter;
+import org.springframework.security.authorization.AuthorizationDecision;
 import org.springframework.security.config.Customizer;
 import org.springframework.security.config.annotation.method.configuration.EnableMethodSecurity;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
+import org.springframework.security.config.http.SessionCreationPolicy;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.crypto.factory.PasswordEncoderFactories;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.provisioning.InMemoryUserDetailsManager;
+import org.springframework.security.oauth2.client.endpoint.RestClientAuthorizationCodeTokenResponseClient;
+import org.springframework.security.oauth2.client.http.OAuth2ErrorResponseErrorHandler;
+import org.springframework.security.oauth2.core.http.converter.OAuth2AccessTokenResponseHttpMessageConverter;
 import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.web.access.intercept.RequestAuthorizationContext;
+import org.springframework.security.web.authentication.AnonymousAuthenticationFilter;
+import org.springframework.security.web.context.RequestAttributeSecurityContextRepository;
+import org.springframework.security.web.context.SecurityContextHolderFilter;
+import org.springframework.web.client.RestClient;
+
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 @Configuration
 @EnableWebSecurity
@@ -18,14 +52,68 @@ public class SecurityConfig {
 
     private final CustomOAuth2UserService customOAuth2UserService;
     private final DelegatingOidcUserService delegatingOidcUserService;
+    private final SessionTokenService sessionTokenService;
+    private final ProviderHttpClients providerHttpClients;
+    private final LoginRateLimiter loginRateLimiter;
+    private final ReadYourWrites readYourWrites;
+
+    // "session" (default): JSESSIONID + HttpSession. "stateless": signed AUTH_TOKEN cookie, no session after login.
+    @Value("${app.auth.mode:session}")
+    private String authMode;
+
+    @Value("${app.auth.token.secure-cookie:false}")
+    private boolean secureCookie;
+
+    @Value("${app.metrics.scrape.username:prometheus}")
+    private String scrapeUsername;
+
+    // Plain text, or already encoded with an id prefix such as {bcrypt}; blank closes /actuator/prometheus
+    @Value("${app.metrics.scrape.password:}")
+    private String scrapePassword;
+
+    // Login identifiers (email, or GitHub username) allowed to use /admin/**
+    private final Set<String> adminEmails;
 
-    public SecurityConfig(CustomOAuth2UserService customOAuth2UserService, DelegatingOidcUserService delegatingOidcUserService) {
+    public SecurityConfig(CustomOAuth2UserService customOAuth2UserService, DelegatingOidcUserService delegatingOidcUserService,
+                          SessionTokenService sessionTokenService, ProviderHttpClients providerHttpClients,
+                          LoginRateLimiter loginRateLimiter, ReadYourWrites readYourWrites,
+                          @Value("${app.admin.emails:}") List<String> adminEmails) {
         this.customOAuth2UserService = customOAuth2UserService;
         this.delegatingOidcUserService = delegatingOidcUserService;
+        this.sessionTokenService = sessionTokenService;
+        this.providerHttpClients = providerHttpClients;
+        this.loginRateLimiter = loginRateLimiter;
+        this.readYourWrites = readYourWrites;
+        this.adminEmails = adminEmails.stream()
+                .filter(e -> !e.isBlank())
+                .map(IdentityCache::normalizeEmail)
+                .collect(Collectors.toUnmodifiableSet());
+    }
+
+    // Scrapes authenticate with HTTP Basic as a dedicated user; no session, and the user cannot log in elsewhere
+    @Bean
+    @Order(1)
+    public SecurityFilterChain metricsFilterChain(HttpSecurity http) throws Exception {
+        http
+                .securityMatcher("/actuator/prometheus")
+                .authorizeHttpRequests(auth -> {
+                    if (scrapePassword.isBlank()) {
+                        auth.anyRequest().denyAll();
+                    } else {
+                        auth.anyRequest().hasRole("METRICS");
+                    }
+                })
+                .httpBasic(Customizer.withDefaults())
+                .userDetailsService(scrapeUser())
+                .sessionManagement(sm -> sm.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
+                .csrf(csrf -> csrf.disable());
+        return http.build();
     }
 
     @Bean
     public SecurityFilterChain securityFilterChain(HttpSecurity http) throws Exception {
+        boolean stateless = "stateless".equalsIgnoreCase(authMode);
+
         http
                 // Public vs protected routes
                 .authorizeHttpRequests(auth -> auth
@@ -33,8 +121,10 @@ public class SecurityConfig {
                                 "/", "/index.html",
                                 "/auth/google/verify",          // GIS posts the ID token here
                                 "/css/**", "/js/**", "/images/**",
-                                "/h2-console/**"               // dev only
+                                "/h2-console/**",              // dev only
+                                "/actuator/health/**"          // probes
                         ).permitAll()
+                        .requestMatchers("/admin/**").access(this::isAdmin)
                         .anyRequest().authenticated()
                 )
 
@@ -46,26 +136,77 @@ public class SecurityConfig {
                 )
 
                 // GitHub via Spring OAuth2 (keep working)
-                .oauth2Login(oauth -> oauth
-                        .loginPage("/")                              
-                        .defaultSuccessUrl("/profile.html", true)
-                        .userInfoEndpoint(u -> u
-                                .userService(customOAuth2UserService)
-                                .oidcUserService(delegatingOidcUserService)  
-                        )
-                )
+                .oauth2Login(oauth -> {
+                        oauth
+                                .loginPage("/")
+                                .defaultSuccessUrl("/profile.html", true)
+                                .tokenEndpoint(t -> t.accessTokenResponseClient(tokenResponseClient()))
+                                .userInfoEndpoint(u -> u
+                                        .userService(customOAuth2UserService)
+                                        .oidcUserService(delegatingOidcUserService)
+                                );
+                        if (stateless) {
+                            oauth.successHandler(new TokenIssuingSuccessHandler(sessionTokenService, "/profile.html", secureCookie));
+                        }
+                })
 
                 .logout(logout -> logout
                         .logoutUrl("/logout")
                         .clearAuthentication(true)
                         .invalidateHttpSession(true)
-                        .deleteCookies("JSESSIONID")
+                        .deleteCookies("JSESSIONID", "SESSION", SessionTokenService.COOKIE_NAME)
                         .logoutSuccessUrl("/")
                 )
 
                 .sessionManagement(sm -> sm.sessionFixation(sf -> sf.migrateSession()))
-                .httpBasic(Customizer.withDefaults());
+                .httpBasic(Customizer.withDefaults())
+
+                // Login bursts are turned away before any session, security context or DB work
+                .addFilterBefore(new LoginRateLimitFilter(loginRateLimiter), SecurityContextHolderFilter.class)
+                // Needs the authenticated principal, so it runs once the context is fully established
+                .addFilterAfter(new ReadYourWritesFilter(readYourWrites), AnonymousAuthenticationFilter.class);
+
+        if (stateless) {
+            // The session only lives for the authorization-request round trip; the authenticated
+            // context is never written to it and is rebuilt from the token on every request.
+            http
+                    .securityContext(sc -> sc.securityContextRepository(new RequestAttributeSecurityContextRepository()))
+                    .addFilterAfter(new SessionTokenAuthenticationFilter(sessionTokenService), SecurityContextHolderFilter.class);
+        }
 
         return http.build();
     }
+
+    private UserDetailsService scrapeUser() {
+        PasswordEncoder encoder = PasswordEncoderFactories.createDelegatingPasswordEncoder();
+        String password = scrapePassword.startsWith("{") ? scrapePassword : encoder.encode(scrapePassword);
+        return new InMemoryUserDetailsManager(User.withUsername(scrapeUsername)
+                .password(password)
+                .roles("METRICS")
+                .build());
+    }
+
+    // Checked per request from the principal, so it works the same in session, stateless and jdbc-session modes
+    private AuthorizationDecision isAdmin(Supplier<Authentication> authentication, RequestAuthorizationContext context) {
+        Authentication auth = authentication.get();
+        return new AuthorizationDecision(auth != null && auth.getPrincipal() instanceof AppUserPrincipal principal
+                && adminEmails.contains(principal.getEmail()));
+    }
+
+    // Same converters and error handling as the Spring Security default, on the per-provider clients
+    private RestClientAuthorizationCodeTokenResponseClient tokenResponseClient() {
+        RestClient restClient = RestClient.builder()
+                .requestFactory(providerHttpClients.requestFactory())
+                .requestInterceptor(providerHttpClients.guard())
+                .messageConverters(converters -> {
+                    converters.clear();
+                    converters.add(new FormHttpMessageConverter());
+                    converters.add(new OAuth2AccessTokenResponseHttpMessageConverter());
+                })
+                .defaultStatusHandler(new OAuth2ErrorResponseErrorHandler())
+                .build();
+        RestClientAuthorizationCodeTokenResponseClient client = new RestClientAuthorizationCodeTokenResponseClient();
+        client.setRestClient(restClient);
+        return client;
+    }
 }
@@ -0,0 +1,53 @@
+package com.lada.oauthlogin.controller;
+
+import com.lada.oauthlogin.service.AccountExportService;
+import com.lada.oauthlogin.service.AccountExportService.ExportPage;
+import com.lada.oauthlogin.service.AccountTransferService;
+import com.lada.oauthlogin.service.AccountTransferService.ImportResult;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.InputStream;
+
+// Access is restricted to app.admin.emails in SecurityConfig
+@RestController
+@RequestMapping("/admin")
+public class AdminController {
+
+    private final AccountExportService accountExportService;
+    private final AccountTransferService accountTransferService;
+
+    public AdminController(AccountExportService accountExportService, AccountTransferService accountTransferService) {
+        this.accountExportService = accountExportService;
+        this.accountTransferService = accountTransferService;
+    }
+
+    // Page through with ?after=<nextAfterId of the previous page> until nextAfterId is null
+    @GetMapping("/users")
+    public ExportPage users(@RequestParam(defaultValue = "0") long after,
+                            @RequestParam(defaultValue = "500") int limit) {
+        return accountExportService.page(after, limit);
+    }
+
+    // Full NDJSON dump; after an interrupted download, resume with ?after=<id of the last complete line>
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> export(@RequestParam(defaultValue = "0") long after) {
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(out -> accountTransferService.export(after, out));
+    }
+
+    // On failure the body carries the checkpoint; re-post the same file with ?skip=<checkpoint>
+    @PostMapping(value = "/import", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<ImportResult> importAccounts(InputStream body, @RequestParam(defaultValue = "0") long skip) {
+        ImportResult result = accountTransferService.importAccounts(body, skip);
+        return ResponseEntity.status(result.error() == null ? HttpStatus.OK : HttpStatus.UNPROCESSABLE_ENTITY).body(result);
+    }
+}
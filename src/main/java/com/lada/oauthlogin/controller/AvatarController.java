@@ -0,0 +1,85 @@
+package com.lada.oauthlogin.controller;
+
+import com.lada.oauthlogin.cache.AvatarCache;
+import com.lada.oauthlogin.cache.AvatarCache.Thumbnail;
+import com.lada.oauthlogin.cache.IdentityCache.CachedUser;
+import com.lada.oauthlogin.security.AppUserPrincipal;
+import com.lada.oauthlogin.service.ProfileQueryService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Duration;
+
+@RestController
+public class AvatarController {
+
+    // Tomcat's sendfile hand-off (org.apache.coyote.Constants): the connector writes the file after the servlet returns
+    private static final String SENDFILE_SUPPORTED = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    // Thumbnail URLs carry ?v=<version>, so a changed avatar is a new URL and the old one can be cached for good
+    private static final String CACHE_CONTROL = CacheControl.maxAge(Duration.ofDays(365)).cachePrivate().immutable().getHeaderValue();
+
+    private final AvatarCache avatarCache;
+    private final ProfileQueryService profileQueryService;
+
+    public AvatarController(AvatarCache avatarCache, ProfileQueryService profileQueryService) {
+        this.avatarCache = avatarCache;
+        this.profileQueryService = profileQueryService;
+    }
+
+    // Only the signed-in user's own avatar: the app never shows other users' avatars, so another id is a 404
+    @GetMapping("/avatars/{userId}")
+    public void avatar(@PathVariable Long userId, Authentication auth,
+                       HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (auth == null || !(auth.getPrincipal() instanceof AppUserPrincipal principal)
+                || principal.getUserId() != userId) {
+            response.sendError(HttpStatus.NOT_FOUND.value());
+            return;
+        }
+        Thumbnail thumbnail = avatarCache.get(userId);
+        if (thumbnail == null || !Files.isReadable(thumbnail.path())) {
+            // Not on this node (yet): send the browser to the provider and fetch it for next time.
+            // Only to an allowed avatar host, so a stored URL cannot turn this into an open redirect
+            String source = profileQueryService.findProfile(userId).map(CachedUser::avatarUrl).orElse(null);
+            if (!avatarCache.isAllowedSource(source)) {
+                response.sendError(HttpStatus.NOT_FOUND.value());
+                return;
+            }
+            avatarCache.refreshIfChanged(userId, source);
+            response.setHeader(HttpHeaders.CACHE_CONTROL, CacheControl.noCache().getHeaderValue());
+            response.sendRedirect(source);
+            return;
+        }
+
+        String etag = "\"" + thumbnail.version() + "\"";
+        response.setHeader(HttpHeaders.ETAG, etag);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, CACHE_CONTROL);
+        if (etag.equals(request.getHeader(HttpHeaders.IF_NONE_MATCH))) {
+            response.setStatus(HttpStatus.NOT_MODIFIED.value());
+            return;
+        }
+
+        response.setContentType(MediaType.IMAGE_PNG_VALUE);
+        response.setContentLengthLong(thumbnail.size());
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED))) {
+            request.setAttribute(SENDFILE_FILENAME, thumbnail.path().toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, 0L);
+            request.setAttribute(SENDFILE_END, thumbnail.size());
+        } else {
+            Files.copy(thumbnail.path(), response.getOutputStream());
+        }
+    }
+}
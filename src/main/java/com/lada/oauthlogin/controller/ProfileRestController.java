@@ -1,11 +1,18 @@
 package com.lada.oauthlogin.controller;
 
-import com.lada.oauthlogin.model.User;
-import com.lada.oauthlogin.repository.UserRepository;
+import com.lada.oauthlogin.cache.AvatarCache;
+import com.lada.oauthlogin.cache.AvatarCache.Thumbnail;
+import com.lada.oauthlogin.cache.IdentityCache;
+import com.lada.oauthlogin.cache.IdentityCache.CachedUser;
+import com.lada.oauthlogin.security.AppUserPrincipal;
+import com.lada.oauthlogin.service.ProfileQueryService;
+import com.lada.oauthlogin.service.ProfileUpdateService;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
-import org.springframework.security.oauth2.core.user.OAuth2User;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -13,122 +20,84 @@ import java.util.Map;
 @RestController
 public class ProfileRestController {
 
-    private final UserRepository userRepository;
-
-    public ProfileRestController(UserRepository userRepository) {
-        this.userRepository = userRepository;
+    private final IdentityCache identityCache;
+    private final ProfileQueryService profileQueryService;
+    private final ProfileUpdateService profileUpdateService;
+    private final AvatarCache avatarCache;
+
+    public ProfileRestController(IdentityCache identityCache, ProfileQueryService profileQueryService,
+                                 ProfileUpdateService profileUpdateService, AvatarCache avatarCache) {
+        this.identityCache = identityCache;
+        this.profileQueryService = profileQueryService;
+        this.profileUpdateService = profileUpdateService;
+        this.avatarCache = avatarCache;
     }
 
     @GetMapping("/profile-data")
-    public Map<String, Object> me(Authentication auth) {
-        if (auth == null || auth.getPrincipal() == null) {
-            return Map.of("error", "Not authenticated");
+    public ResponseEntity<Map<String, Object>> me(Authentication auth, WebRequest request) {
+        if (auth == null || !(auth.getPrincipal() instanceof AppUserPrincipal principal)) {
+            return ResponseEntity.status(401).body(Map.of("error", "Not authenticated"));
         }
 
-        Object principal = auth.getPrincipal();
-        String email = null;
-        String name = null;
-        String picture = null;
-        String provider = "unknown";
-
-        Map<String, Object> response = new HashMap<>();
-
-        if (principal instanceof OAuth2User oauthUser) {
-            email = oauthUser.getAttribute("email");
-            name = oauthUser.getAttribute("name");
-            picture = oauthUser.getAttribute("picture");
-
-            // --- Fallbacks for GitHub ---
-            if (email == null) email = oauthUser.getAttribute("login");
-            if (picture == null) picture = oauthUser.getAttribute("avatar_url");
-            if (name == null) name = oauthUser.getAttribute("login");
-
-            // --- Determine provider (from attribute or fallback detection) ---
-            provider = oauthUser.getAttribute("provider");
-            if (provider == null) {
-                if (oauthUser.getAttribute("login") != null && oauthUser.getAttribute("avatar_url") != null) {
-                    provider = "github";
-                } else if (oauthUser.getAttribute("email") != null && oauthUser.getAttribute("picture") != null) {
-                    provider = "google";
-                }
-            }
-
-            response.put("provider", provider);
+        // Users are provisioned at login; this GET only reads (cache, else read-only projection by id)
+        CachedUser user = identityCache.getUser(principal.getEmail());
+        if (user == null || !user.id().equals(principal.getUserId())) {
+            user = profileQueryService.findProfile(principal.getUserId()).orElse(null);
         }
-
-        if (email == null) {
-            return Map.of("error", "Email missing in authentication principal");
+        if (user == null) {
+            return ResponseEntity.status(404).body(Map.of("error", "User not found"));
         }
 
-        email = email.trim().toLowerCase();
-        User user = userRepository.findByEmail(email).orElse(null);
-
-        // --- Automatically create user if not existing ---
-        if (user == null) {
-            user = new User();
-            user.setEmail(email);
-            user.setDisplayName(name);
-            user.setAvatarUrl(picture);
-            user.setBio("");
-            userRepository.save(user);
+        Thumbnail thumbnail = avatarCache.get(user.id());
+        String etag = etag(user, thumbnail);
+        if (request.checkNotModified(etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
         }
 
-        response.put("email", user.getEmail());
-        response.put("displayName", user.getDisplayName());
-        response.put("avatarUrl", user.getAvatarUrl());
-        response.put("bio", user.getBio());
+        Map<String, Object> response = new HashMap<>();
+        response.put("provider", principal.getProvider());
+        response.put("email", user.email());
+        response.put("displayName", user.displayName());
+        response.put("avatarUrl", user.avatarUrl());
+        response.put("avatarThumbnailUrl", thumbnail == null ? null : "/avatars/" + user.id() + "?v=" + thumbnail.version());
+        response.put("bio", user.bio());
+
+        return ResponseEntity.ok()
+                .eTag(etag)
+                .cacheControl(CacheControl.noCache().cachePrivate())
+                .body(response);
+    }
 
-        return response;
+    // A thumbnail arriving after login changes the body, so its version is part of the tag
+    private static String etag(CachedUser user, Thumbnail thumbnail) {
+        long version = user.updatedAt() == null ? 0 : user.updatedAt().toInstant().toEpochMilli();
+        return "W/\"" + user.id() + "-" + version + (thumbnail == null ? "" : "-" + thumbnail.version()) + "\"";
     }
 
-    @PostMapping("/profile")
-    public ResponseEntity<?> updateProfile(@RequestBody Map<String, String> updates, Authentication auth) {
-        if (auth == null || auth.getPrincipal() == null) {
+    @GetMapping("/profile/providers")
+    public ResponseEntity<?> providers(Authentication auth) {
+        if (auth == null || !(auth.getPrincipal() instanceof AppUserPrincipal principal)) {
             return ResponseEntity.status(401).body(Map.of("error", "Not authenticated"));
         }
+        return ResponseEntity.ok(Map.of("providers", profileQueryService.linkedProviders(principal.getUserId())));
+    }
 
-        String email = extractEmail(auth.getPrincipal());
-        if (email == null) {
-            return ResponseEntity.badRequest().body(Map.of("error", "Email not found"));
+    @PostMapping("/profile")
+    public ResponseEntity<?> updateProfile(@RequestBody Map<String, String> updates, Authentication auth) {
+        if (auth == null || !(auth.getPrincipal() instanceof AppUserPrincipal principal)) {
+            return ResponseEntity.status(401).body(Map.of("error", "Not authenticated"));
         }
 
-        User user = userRepository.findByEmail(email).orElse(null);
+        CachedUser user = profileUpdateService.update(principal.getUserId(), principal.getEmail(),
+                updates.get("displayName"), updates.get("bio")).orElse(null);
         if (user == null) {
             return ResponseEntity.status(404).body(Map.of("error", "User not found"));
         }
 
-        String displayName = updates.get("displayName");
-        String bio = updates.get("bio");
-        boolean dirty = false;
-
-        if (displayName != null && !displayName.trim().isEmpty() &&
-                !displayName.trim().equals(user.getDisplayName())) {
-            user.setDisplayName(displayName.trim());
-            dirty = true;
-        }
-
-        if (bio != null && !bio.equals(user.getBio())) {
-            user.setBio(bio.trim());
-            dirty = true;
-        }
-
-        if (dirty) {
-            userRepository.save(user);
-        }
-
         return ResponseEntity.ok(Map.of(
                 "status", "updated",
-                "displayName", user.getDisplayName(),
-                "bio", user.getBio()
+                "displayName", user.displayName(),
+                "bio", user.bio()
         ));
     }
-
-    private String extractEmail(Object principal) {
-        if (principal instanceof Map<?, ?> map) {
-            return (String) map.get("email");
-        } else if (principal instanceof OAuth2User oauthUser) {
-            return oauthUser.getAttribute("email");
-        }
-        return null;
-    }
 }
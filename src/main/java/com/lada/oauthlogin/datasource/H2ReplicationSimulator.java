@@ -0,0 +1,117 @@
+package com.lada.oauthlogin.datasource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+
+/**
+ * Development stand-in for asynchronous replication between embedded H2 databases: every
+ * {@code simulated-lag-ms} it copies new or changed users, new provider links and the heartbeat from
+ * the primary to each replica. Only for local runs of the {@code replica} profile.
+ */
+public class H2ReplicationSimulator {
+
+    private static final Logger log = LoggerFactory.getLogger(H2ReplicationSimulator.class);
+
+    private static final String CHANGED_USERS =
+            "SELECT id, email, display_name, avatar_url, bio, created_at, updated_at FROM users WHERE updated_at >= ?";
+    private static final String MERGE_USER =
+            "MERGE INTO users (id, email, display_name, avatar_url, bio, created_at, updated_at) KEY (id) VALUES (?, ?, ?, ?, ?, ?, ?)";
+    private static final String NEW_LINKS =
+            "SELECT id, user_id, provider, provider_user_id, provider_email FROM auth_providers WHERE id > ?";
+    private static final String MERGE_LINK =
+            "MERGE INTO auth_providers (id, user_id, provider, provider_user_id, provider_email) KEY (id) VALUES (?, ?, ?, ?, ?)";
+    private static final String COPY_BEAT = "UPDATE replication_heartbeat SET beat_at = ? WHERE id = 1";
+
+    private final DataSource primary;
+    private final List<DataSource> replicas;
+
+    // Primary-side watermarks; rows at the watermark are copied again, which MERGE makes harmless
+    private OffsetDateTime usersSince = OffsetDateTime.of(1970, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+    private long linksAfter;
+
+    public H2ReplicationSimulator(DataSource primary, List<DataSource> replicas) {
+        this.primary = primary;
+        this.replicas = replicas;
+    }
+
+    @Scheduled(fixedDelayString = "${app.datasource.replica.simulated-lag-ms:500}")
+    public void replicate() {
+        try (Connection source = primary.getConnection()) {
+            OffsetDateTime beat = beat(source);
+            OffsetDateTime nextUsersSince = usersSince;
+            long nextLinksAfter = linksAfter;
+            for (DataSource replica : replicas) {
+                try (Connection target = replica.getConnection()) {
+                    nextUsersSince = copyUsers(source, target);
+                    nextLinksAfter = copyLinks(source, target);
+                    try (PreparedStatement ps = target.prepareStatement(COPY_BEAT)) {
+                        ps.setObject(1, beat);
+                        ps.executeUpdate();
+                    }
+                }
+            }
+            usersSince = nextUsersSince;
+            linksAfter = nextLinksAfter;
+        } catch (SQLException e) {
+            log.warn("Simulated replication failed: {}", e.toString());
+        }
+    }
+
+    private static OffsetDateTime beat(Connection source) throws SQLException {
+        try (PreparedStatement ps = source.prepareStatement("SELECT beat_at FROM replication_heartbeat WHERE id = 1");
+             ResultSet rs = ps.executeQuery()) {
+            return rs.next() ? rs.getObject(1, OffsetDateTime.class) : null;
+        }
+    }
+
+    private OffsetDateTime copyUsers(Connection source, Connection target) throws SQLException {
+        OffsetDateTime watermark = usersSince;
+        try (PreparedStatement read = source.prepareStatement(CHANGED_USERS);
+             PreparedStatement write = target.prepareStatement(MERGE_USER)) {
+            read.setObject(1, usersSince);
+            try (ResultSet rs = read.executeQuery()) {
+                while (rs.next()) {
+                    OffsetDateTime updatedAt = rs.getObject(7, OffsetDateTime.class);
+                    for (int i = 1; i <= 7; i++) {
+                        write.setObject(i, rs.getObject(i));
+                    }
+                    write.addBatch();
+                    if (updatedAt != null && updatedAt.isAfter(watermark)) {
+                        watermark = updatedAt;
+                    }
+                }
+            }
+            write.executeBatch();
+        }
+        return watermark;
+    }
+
+    private long copyLinks(Connection source, Connection target) throws SQLException {
+        long watermark = linksAfter;
+        try (PreparedStatement read = source.prepareStatement(NEW_LINKS);
+             PreparedStatement write = target.prepareStatement(MERGE_LINK)) {
+            read.setLong(1, linksAfter);
+            try (ResultSet rs = read.executeQuery()) {
+                while (rs.next()) {
+                    for (int i = 1; i <= 5; i++) {
+                        write.setObject(i, rs.getObject(i));
+                    }
+                    write.addBatch();
+                    watermark = Math.max(watermark, rs.getLong(1));
+                }
+            }
+            write.executeBatch();
+        }
+        return watermark;
+    }
+}
@@ -0,0 +1,78 @@
+package com.lada.oauthlogin.datasource;
+
+import com.lada.oauthlogin.cache.BoundedTtlCache;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Read-your-writes for replica routing. Users written on this node within {@code sticky-for} are
+ * remembered, and requests made by them (bound by {@link ReadYourWritesFilter}) read from the primary.
+ * Stickiness is per node; {@code max-lag} bounds what another node can serve.
+ */
+@Component
+public class ReadYourWrites {
+
+    private static final ThreadLocal<Boolean> PRIMARY = new ThreadLocal<>();
+
+    private final boolean enabled;
+    private final BoundedTtlCache<Long, Boolean> recentWrites;
+
+    public ReadYourWrites(@Value("${app.datasource.replica.urls:}") List<String> replicaUrls,
+                          @Value("${app.datasource.replica.sticky-for:10s}") Duration stickyFor,
+                          @Value("${app.datasource.replica.sticky-max-tracked:100000}") int maxTracked) {
+        this.enabled = replicaUrls.stream().anyMatch(url -> !url.isBlank());
+        this.recentWrites = new BoundedTtlCache<>(maxTracked, stickyFor);
+    }
+
+    /** Whether reads on this thread must go to the primary. */
+    public static boolean primaryRequired() {
+        return Boolean.TRUE.equals(PRIMARY.get());
+    }
+
+    /** Records a write for the user; the rest of the current request also stays on the primary. */
+    public void wrote(Long userId) {
+        if (!enabled || userId == null) {
+            return;
+        }
+        recentWrites.put(userId, Boolean.TRUE);
+        if (PRIMARY.get() != null) {
+            PRIMARY.set(Boolean.TRUE);
+        }
+    }
+
+    /** Runs a read-modify-write for the user with every read on the primary. */
+    public <T> T writing(Long userId, Supplier<T> work) {
+        wrote(userId);
+        Boolean previous = PRIMARY.get();
+        PRIMARY.set(Boolean.TRUE);
+        try {
+            return work.get();
+        } finally {
+            restore(previous);
+        }
+    }
+
+    // Returns the previous binding for restore(); a null user (anonymous request) may still use replicas
+    Boolean bind(Long userId) {
+        Boolean previous = PRIMARY.get();
+        boolean sticky = enabled && userId != null && recentWrites.get(userId) != null;
+        PRIMARY.set(Boolean.TRUE.equals(previous) || sticky);
+        return previous;
+    }
+
+    void restore(Boolean previous) {
+        if (previous == null) {
+            PRIMARY.remove();
+        } else {
+            PRIMARY.set(previous);
+        }
+    }
+
+    public int trackedUsers() {
+        return recentWrites.size();
+    }
+}
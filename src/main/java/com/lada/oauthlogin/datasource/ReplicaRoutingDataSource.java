@@ -0,0 +1,151 @@
+package com.lada.oauthlogin.datasource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Target for read-only connections: round-robin over the replicas that are within {@code max-lag},
+ * otherwise the primary. Lag is measured by writing {@code replication_heartbeat} on the primary and
+ * reading it back from each replica; a replica that fails the probe is out until the next one succeeds.
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(ReplicaRoutingDataSource.class);
+
+    static final String PRIMARY = "primary";
+
+    private static final String BEAT = "UPDATE replication_heartbeat SET beat_at = ? WHERE id = 1";
+    private static final String READ_BEAT = "SELECT beat_at FROM replication_heartbeat WHERE id = 1";
+
+    /** One replica pool and its last probe result; also the source of the {@code datasource.replica.*} meters. */
+    public static final class Replica {
+
+        private final String name;
+        private final DataSource dataSource;
+        private volatile long lagMillis = -1;
+        private volatile boolean healthy;
+
+        Replica(String name, DataSource dataSource) {
+            this.name = name;
+            this.dataSource = dataSource;
+        }
+
+        public String name() { return name; }
+        public long lagMillis() { return lagMillis; }
+        public boolean healthy() { return healthy; }
+    }
+
+    private final DataSource primary;
+    private final List<Replica> replicas = new ArrayList<>();
+    private final long maxLagMillis;
+    private final AtomicInteger next = new AtomicInteger();
+
+    private final LongAdder replicaReads = new LongAdder();
+    private final LongAdder stickyReads = new LongAdder();
+    private final LongAdder fallbackReads = new LongAdder();
+
+    public ReplicaRoutingDataSource(DataSource primary, List<DataSource> replicaPools, Duration maxLag) {
+        this.primary = primary;
+        this.maxLagMillis = maxLag.toMillis();
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primary);
+        for (int i = 0; i < replicaPools.size(); i++) {
+            Replica replica = new Replica("replica-" + i, replicaPools.get(i));
+            replicas.add(replica);
+            targets.put(replica.name(), replica.dataSource);
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+        setLenientFallback(false);
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (ReadYourWrites.primaryRequired()) {
+            stickyReads.increment();
+            return PRIMARY;
+        }
+        int size = replicas.size();
+        int start = Math.floorMod(next.getAndIncrement(), size);
+        for (int i = 0; i < size; i++) {
+            Replica replica = replicas.get((start + i) % size);
+            if (replica.healthy) {
+                replicaReads.increment();
+                return replica.name;
+            }
+        }
+        fallbackReads.increment();
+        return PRIMARY;
+    }
+
+    // Starts with every replica out of rotation; the first probe (right after startup) brings them in
+    @Scheduled(fixedDelayString = "${app.datasource.replica.probe-interval-ms:1000}")
+    public void probe() {
+        try (Connection con = primary.getConnection(); PreparedStatement ps = con.prepareStatement(BEAT)) {
+            ps.setObject(1, OffsetDateTime.now(ZoneOffset.UTC));
+            ps.executeUpdate();
+        } catch (SQLException e) {
+            log.warn("Replication heartbeat write failed: {}", e.toString());
+        }
+        for (Replica replica : replicas) {
+            probe(replica);
+        }
+    }
+
+    private void probe(Replica replica) {
+        try (Connection con = replica.dataSource.getConnection();
+             PreparedStatement ps = con.prepareStatement(READ_BEAT);
+             ResultSet rs = ps.executeQuery()) {
+            OffsetDateTime beat = rs.next() ? rs.getObject(1, OffsetDateTime.class) : null;
+            // Compared with this node's clock, so node clock skew adds to the measured lag
+            long lag = beat == null ? -1 : Math.max(0, Duration.between(beat, OffsetDateTime.now(ZoneOffset.UTC)).toMillis());
+            boolean healthy = lag >= 0 && lag <= maxLagMillis;
+            if (healthy != replica.healthy) {
+                log.info("Replica {} {} (lag {} ms)", replica.name, healthy ? "in rotation" : "out of rotation", lag);
+            }
+            replica.lagMillis = lag;
+            replica.healthy = healthy;
+        } catch (SQLException e) {
+            if (replica.healthy) {
+                log.warn("Replica {} out of rotation: {}", replica.name, e.toString());
+            }
+            replica.lagMillis = -1;
+            replica.healthy = false;
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        for (Replica replica : replicas) {
+            if (replica.dataSource instanceof AutoCloseable pool) {
+                pool.close();
+            }
+        }
+    }
+
+    public List<DataSource> replicaPools() {
+        return replicas.stream().map(r -> r.dataSource).toList();
+    }
+
+    public List<Replica> replicas() { return replicas; }
+    public long replicaReads() { return replicaReads.sum(); }
+    public long stickyReads() { return stickyReads.sum(); }
+    public long fallbackReads() { return fallbackReads.sum(); }
+}
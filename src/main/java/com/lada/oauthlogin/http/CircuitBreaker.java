@@ -0,0 +1,67 @@
+package com.lada.oauthlogin.http;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+/**
+ * Consecutive-failure circuit breaker. After {@code failureThreshold} failures in a row the circuit opens and
+ * calls are rejected for {@code openDuration}; then a single trial call is let through (half-open), and its
+ * outcome closes the circuit or opens it again.
+ */
+public class CircuitBreaker {
+
+    public enum State { CLOSED, HALF_OPEN, OPEN }
+
+    private final int failureThreshold;
+    private final long openNanos;
+    private final LongSupplier clock;
+
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private final AtomicBoolean trialInFlight = new AtomicBoolean();
+    private volatile long openedAt;
+    private volatile boolean open;
+
+    public CircuitBreaker(int failureThreshold, Duration openDuration) {
+        this(failureThreshold, openDuration, System::nanoTime);
+    }
+
+    CircuitBreaker(int failureThreshold, Duration openDuration, LongSupplier clock) {
+        this.failureThreshold = failureThreshold;
+        this.openNanos = openDuration.toNanos();
+        this.clock = clock;
+    }
+
+    /** Whether a call may proceed now; a {@code true} result must be followed by onSuccess or onFailure. */
+    public boolean tryAcquire() {
+        if (!open) {
+            return true;
+        }
+        if (clock.getAsLong() - openedAt < openNanos) {
+            return false;
+        }
+        return trialInFlight.compareAndSet(false, true);
+    }
+
+    public void onSuccess() {
+        consecutiveFailures.set(0);
+        open = false;
+        trialInFlight.set(false);
+    }
+
+    public void onFailure() {
+        if (open || consecutiveFailures.incrementAndGet() >= failureThreshold) {
+            openedAt = clock.getAsLong();
+            open = true;
+            trialInFlight.set(false);
+        }
+    }
+
+    public State state() {
+        if (!open) {
+            return State.CLOSED;
+        }
+        return clock.getAsLong() - openedAt < openNanos ? State.OPEN : State.HALF_OPEN;
+    }
+}
@@ -0,0 +1,221 @@
+package com.lada.oauthlogin.http;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.client.registration.ClientRegistrationRepository;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Outbound HTTP for the provider token and user-info endpoints. Each registration gets its own JDK
+ * {@link HttpClient} (HTTP/2 where the server supports it, keep-alive connection reuse), timeouts, a
+ * concurrency cap and a {@link CircuitBreaker}, so a slow or failing provider only uses up its own permits.
+ * A permit is held until the response is closed, so the cap and {@code in_flight} include reading the body.
+ * Requests are routed by endpoint URI; anything else goes to a shared "other" client.
+ *
+ * <p>Settings are {@code app.http.*}, overridable per registration as {@code app.http.<registrationId>.*}.
+ */
+@Component
+public class ProviderHttpClients {
+
+    private static final Logger log = LoggerFactory.getLogger(ProviderHttpClients.class);
+
+    private static final String OTHER = "other";
+
+    /** Per-provider client state; also the source of the {@code provider.http.*} meters. */
+    public static final class Provider {
+
+        private final String name;
+        private final JdkClientHttpRequestFactory requestFactory;
+        private final Semaphore permits;
+        private final int maxConcurrent;
+        private final long acquireTimeoutNanos;
+        private final CircuitBreaker breaker;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final LongAdder rejectedBusy = new LongAdder();
+        private final LongAdder rejectedOpen = new LongAdder();
+
+        private Provider(String name, Environment env) {
+            this.name = name;
+            Duration connectTimeout = setting(env, name, "connect-timeout", Duration.class, Duration.ofSeconds(2));
+            Duration readTimeout = setting(env, name, "read-timeout", Duration.class, Duration.ofSeconds(5));
+            this.maxConcurrent = setting(env, name, "max-concurrent", Integer.class, 64);
+            this.acquireTimeoutNanos = setting(env, name, "acquire-timeout", Duration.class, Duration.ofMillis(500)).toNanos();
+            this.breaker = new CircuitBreaker(
+                    setting(env, name, "breaker.failure-threshold", Integer.class, 5),
+                    setting(env, name, "breaker.open-duration", Duration.class, Duration.ofSeconds(30)));
+            this.permits = new Semaphore(maxConcurrent);
+
+            HttpClient client = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_2)
+                    .connectTimeout(connectTimeout)
+                    .followRedirects(HttpClient.Redirect.NEVER)
+                    .build();
+            this.requestFactory = new JdkClientHttpRequestFactory(client);
+            this.requestFactory.setReadTimeout(readTimeout);
+            log.debug("Provider HTTP client {}: connect={} read={} maxConcurrent={}", name, connectTimeout, readTimeout, maxConcurrent);
+        }
+
+        public String name() { return name; }
+        public int inFlight() { return inFlight.get(); }
+        public int maxConcurrent() { return maxConcurrent; }
+        public CircuitBreaker.State circuitState() { return breaker.state(); }
+        public long rejectedBusy() { return rejectedBusy.sum(); }
+        public long rejectedOpen() { return rejectedOpen.sum(); }
+
+        private ClientHttpResponse execute(Call call) throws IOException {
+            boolean acquired;
+            try {
+                acquired = permits.tryAcquire(acquireTimeoutNanos, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                acquired = false;
+            }
+            if (!acquired) {
+                rejectedBusy.increment();
+                throw new IOException("Too many concurrent requests to provider " + name);
+            }
+            if (!breaker.tryAcquire()) {
+                permits.release();
+                rejectedOpen.increment();
+                throw new IOException("Circuit open for provider " + name);
+            }
+            inFlight.incrementAndGet();
+            ClientHttpResponse response;
+            try {
+                response = call.execute();
+                if (response.getStatusCode().is5xxServerError()) {
+                    breaker.onFailure();
+                } else {
+                    breaker.onSuccess();
+                }
+            } catch (IOException | RuntimeException e) {
+                breaker.onFailure();
+                release();
+                throw e;
+            }
+            // RestTemplate and RestClient close every response once its body is read (or on error)
+            return new PermitResponse(response, this);
+        }
+
+        private void release() {
+            inFlight.decrementAndGet();
+            permits.release();
+        }
+    }
+
+    // Gives the provider's permit back when the response is closed, exactly once
+    private static final class PermitResponse implements ClientHttpResponse {
+
+        private final ClientHttpResponse delegate;
+        private final Provider provider;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        PermitResponse(ClientHttpResponse delegate, Provider provider) {
+            this.delegate = delegate;
+            this.provider = provider;
+        }
+
+        @Override
+        public HttpStatusCode getStatusCode() throws IOException { return delegate.getStatusCode(); }
+
+        @Override
+        public String getStatusText() throws IOException { return delegate.getStatusText(); }
+
+        @Override
+        public HttpHeaders getHeaders() { return delegate.getHeaders(); }
+
+        @Override
+        public InputStream getBody() throws IOException { return delegate.getBody(); }
+
+        @Override
+        public void close() {
+            try {
+                delegate.close();
+            } finally {
+                if (closed.compareAndSet(false, true)) {
+                    provider.release();
+                }
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface Call {
+        ClientHttpResponse execute() throws IOException;
+    }
+
+    private final Map<String, Provider> providers = new LinkedHashMap<>();
+    private final Map<String, Provider> byEndpoint = new HashMap<>();
+
+    public ProviderHttpClients(ClientRegistrationRepository registrations, Environment env) {
+        if (registrations instanceof Iterable<?> all) {
+            for (Object candidate : all) {
+                ClientRegistration registration = (ClientRegistration) candidate;
+                Provider provider = new Provider(registration.getRegistrationId(), env);
+                providers.put(provider.name(), provider);
+                ClientRegistration.ProviderDetails details = registration.getProviderDetails();
+                register(details.getTokenUri(), provider);
+                register(details.getUserInfoEndpoint().getUri(), provider);
+            }
+        }
+        providers.put(OTHER, new Provider(OTHER, env));
+    }
+
+    public Collection<Provider> providers() {
+        return providers.values();
+    }
+
+    /** Request factory that hands each request to its provider's HTTP client. */
+    public ClientHttpRequestFactory requestFactory() {
+        return (uri, method) -> route(uri).requestFactory.createRequest(uri, method);
+    }
+
+    /** Applies the provider's concurrency cap and circuit breaker around each exchange. */
+    public ClientHttpRequestInterceptor guard() {
+        return (request, body, execution) -> route(request.getURI()).execute(() -> execution.execute(request, body));
+    }
+
+    private void register(String endpoint, Provider provider) {
+        if (StringUtils.hasText(endpoint)) {
+            byEndpoint.put(endpointKey(URI.create(endpoint)), provider);
+        }
+    }
+
+    private Provider route(URI uri) {
+        Provider provider = byEndpoint.get(endpointKey(uri));
+        return provider != null ? provider : providers.get(OTHER);
+    }
+
+    private static String endpointKey(URI uri) {
+        return uri.getScheme() + "://" + uri.getRawAuthority() + uri.getRawPath();
+    }
+
+    private static <T> T setting(Environment env, String provider, String key, Class<T> type, T defaultValue) {
+        T global = env.getProperty("app.http." + key, type, defaultValue);
+        return env.getProperty("app.http." + provider + "." + key, type, global);
+    }
+}
@@ -0,0 +1,74 @@
+package com.lada.oauthlogin.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.function.Supplier;
+
+/**
+ * Timers for the login pipeline: {@code login.duration} for the whole of loadUser and
+ * {@code login.stage} per stage, both tagged by registration id and outcome, with
+ * percentile histograms so p99 per stage can be computed from the scrape. OIDC logins additionally
+ * record {@code oidc.idtoken.verify} and {@code oidc.jwks.fetch}.
+ */
+@Component
+public class LoginMetrics {
+
+    private final MeterRegistry registry;
+
+    public LoginMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    public Timer.Sample start() {
+        return Timer.start(registry);
+    }
+
+    public void login(Timer.Sample sample, String registrationId, String outcome) {
+        sample.stop(Timer.builder("login.duration")
+                .description("Time spent in loadUser, including the remote user-info call")
+                .tag("registration", registrationId)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(registry));
+    }
+
+    public void stage(Timer.Sample sample, String stage, String registrationId, String outcome) {
+        sample.stop(Timer.builder("login.stage")
+                .description("Time spent in one stage of loadUser")
+                .tag("stage", stage)
+                .tag("registration", registrationId)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(registry));
+    }
+
+    public void idTokenVerification(Timer.Sample sample, String registrationId, String outcome) {
+        sample.stop(Timer.builder("oidc.idtoken.verify")
+                .description("ID token signature and claim validation")
+                .tag("registration", registrationId)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(registry));
+    }
+
+    public void jwksFetch(Timer.Sample sample, String outcome) {
+        sample.stop(Timer.builder("oidc.jwks.fetch")
+                .description("Provider JWKS download and key parsing")
+                .tag("outcome", outcome)
+                .register(registry));
+    }
+
+    public <T> T stage(String stage, String registrationId, Supplier<T> body) {
+        Timer.Sample sample = start();
+        try {
+            T result = body.get();
+            stage(sample, stage, registrationId, "success");
+            return result;
+        } catch (RuntimeException e) {
+            stage(sample, stage, registrationId, "error");
+            throw e;
+        }
+    }
+}
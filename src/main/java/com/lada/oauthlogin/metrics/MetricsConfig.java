@@ -0,0 +1,123 @@
+package com.lada.oauthlogin.metrics;
+
+import com.lada.oauthlogin.cache.AvatarCache;
+import com.lada.oauthlogin.cache.IdentityCache;
+import com.lada.oauthlogin.datasource.ReplicaRoutingDataSource;
+import com.lada.oauthlogin.http.ProviderHttpClients;
+import com.lada.oauthlogin.outbox.OutboxDispatcher;
+import com.lada.oauthlogin.security.LoginRateLimiter;
+import com.lada.oauthlogin.service.IdentityEventLog;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.PropertySource;
+
+@Configuration
+@PropertySource("classpath:metrics-defaults.properties")
+public class MetricsConfig {
+
+    @Bean
+    public MeterBinder identityCacheMetrics(IdentityCache cache) {
+        return registry -> {
+            for (String tier : new String[] {"link", "user"}) {
+                boolean link = tier.equals("link");
+                FunctionCounter.builder("identity.cache.hits", cache, c -> (link ? c.linkStats() : c.userStats()).hits())
+                        .tag("tier", tier).register(registry);
+                FunctionCounter.builder("identity.cache.misses", cache, c -> (link ? c.linkStats() : c.userStats()).misses())
+                        .tag("tier", tier).register(registry);
+                FunctionCounter.builder("identity.cache.evictions", cache, c -> (link ? c.linkStats() : c.userStats()).evictions())
+                        .tag("tier", tier).register(registry);
+                Gauge.builder("identity.cache.size", cache, c -> (link ? c.linkStats() : c.userStats()).size())
+                        .tag("tier", tier).register(registry);
+            }
+        };
+    }
+
+    @Bean
+    public MeterBinder identityEventMetrics(IdentityEventLog events) {
+        return registry -> FunctionCounter.builder("identity.events.linked", events, IdentityEventLog::lastSequence)
+                .description("Provider identities linked since startup")
+                .register(registry);
+    }
+
+    @Bean
+    public MeterBinder providerHttpMetrics(ProviderHttpClients clients) {
+        return registry -> {
+            for (ProviderHttpClients.Provider p : clients.providers()) {
+                Gauge.builder("provider.http.in_flight", p, ProviderHttpClients.Provider::inFlight)
+                        .tag("provider", p.name()).register(registry);
+                Gauge.builder("provider.http.max_concurrent", p, ProviderHttpClients.Provider::maxConcurrent)
+                        .tag("provider", p.name()).register(registry);
+                Gauge.builder("provider.http.circuit_state", p, c -> c.circuitState().ordinal())
+                        .description("0 = closed, 1 = half-open, 2 = open")
+                        .tag("provider", p.name()).register(registry);
+                FunctionCounter.builder("provider.http.rejected", p, ProviderHttpClients.Provider::rejectedBusy)
+                        .tag("provider", p.name()).tag("reason", "busy").register(registry);
+                FunctionCounter.builder("provider.http.rejected", p, ProviderHttpClients.Provider::rejectedOpen)
+                        .tag("provider", p.name()).tag("reason", "circuit_open").register(registry);
+            }
+        };
+    }
+
+    @Bean
+    public MeterBinder loginRateLimitMetrics(LoginRateLimiter limiter) {
+        return registry -> {
+            FunctionCounter.builder("login.ratelimit.rejected", limiter, LoginRateLimiter::rejectedIp)
+                    .tag("scope", "ip").register(registry);
+            FunctionCounter.builder("login.ratelimit.rejected", limiter, LoginRateLimiter::rejectedProvider)
+                    .tag("scope", "provider").register(registry);
+            FunctionCounter.builder("login.ratelimit.untracked", limiter, LoginRateLimiter::untracked)
+                    .description("Requests admitted without a per-IP bucket because the IP map was full")
+                    .register(registry);
+            Gauge.builder("login.ratelimit.tracked_ips", limiter, LoginRateLimiter::trackedIps).register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder avatarCacheMetrics(AvatarCache cache) {
+        return registry -> {
+            Gauge.builder("avatar.cache.size", cache, AvatarCache::entries).register(registry);
+            Gauge.builder("avatar.cache.bytes", cache, AvatarCache::totalBytes).baseUnit("bytes").register(registry);
+        };
+    }
+
+    // pending, dead and lag are as of the dispatcher's last poll
+    @Bean
+    public MeterBinder outboxMetrics(OutboxDispatcher outbox) {
+        return registry -> {
+            Gauge.builder("outbox.lag", outbox, OutboxDispatcher::lagSeconds)
+                    .description("Age of the oldest undelivered outbox event")
+                    .baseUnit("seconds").register(registry);
+            Gauge.builder("outbox.pending", outbox, OutboxDispatcher::pending).register(registry);
+            Gauge.builder("outbox.dead", outbox, OutboxDispatcher::dead).register(registry);
+            FunctionCounter.builder("outbox.processed", outbox, OutboxDispatcher::delivered)
+                    .tag("outcome", "delivered").register(registry);
+            FunctionCounter.builder("outbox.processed", outbox, OutboxDispatcher::retried)
+                    .tag("outcome", "retried").register(registry);
+            FunctionCounter.builder("outbox.processed", outbox, OutboxDispatcher::deadLettered)
+                    .tag("outcome", "dead").register(registry);
+        };
+    }
+
+    // Only registers meters when replica routing is configured
+    @Bean
+    public MeterBinder replicaRoutingMetrics(ObjectProvider<ReplicaRoutingDataSource> routing) {
+        return registry -> routing.ifAvailable(r -> {
+            for (ReplicaRoutingDataSource.Replica replica : r.replicas()) {
+                Gauge.builder("datasource.replica.lag", replica, ReplicaRoutingDataSource.Replica::lagMillis)
+                        .baseUnit("milliseconds").tag("replica", replica.name()).register(registry);
+                Gauge.builder("datasource.replica.healthy", replica, x -> x.healthy() ? 1 : 0)
+                        .tag("replica", replica.name()).register(registry);
+            }
+            FunctionCounter.builder("datasource.reads", r, ReplicaRoutingDataSource::replicaReads)
+                    .tag("target", "replica").register(registry);
+            FunctionCounter.builder("datasource.reads", r, ReplicaRoutingDataSource::stickyReads)
+                    .tag("target", "primary_sticky").register(registry);
+            FunctionCounter.builder("datasource.reads", r, ReplicaRoutingDataSource::fallbackReads)
+                    .tag("target", "primary_fallback").register(registry);
+        });
+    }
+}
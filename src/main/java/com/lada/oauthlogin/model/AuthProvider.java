@@ -2,20 +2,47 @@ package com.lada.oauthlogin.model;
 
 import jakarta.persistence.*;
 
+import java.time.ZonedDateTime;
+
 @Entity
 @Table(name = "auth_providers",
-        uniqueConstraints = @UniqueConstraint(columnNames = {"provider", "providerUserId"}))
+        uniqueConstraints = @UniqueConstraint(name = "uk_auth_providers_identity", columnNames = {"provider", "providerUserId"}),
+        indexes = @Index(name = "ix_auth_providers_user", columnList = "user_id, provider"))
 public class AuthProvider {
 
-    public enum Provider { GOOGLE, GITHUB }
+    // Stored as a SMALLINT code (see ProviderCodeConverter); codes are persisted, never renumber them
+    public enum Provider {
+        GOOGLE((short) 1),
+        GITHUB((short) 2);
+
+        private final short code;
+
+        Provider(short code) {
+            this.code = code;
+        }
+
+        public short code() {
+            return code;
+        }
+
+        public static Provider fromCode(short code) {
+            for (Provider p : values()) {
+                if (p.code == code) {
+                    return p;
+                }
+            }
+            throw new IllegalArgumentException("Unknown provider code: " + code);
+        }
+    }
 
     @Id @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
-    @ManyToOne(optional = false)
+    // Lazy: listings go through projections (AuthProviderRepository) and never need the User entity
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
     private User user;
 
-    @Enumerated(EnumType.STRING)
+    @Convert(converter = ProviderCodeConverter.class)
     @Column(nullable = false)
     private Provider provider;
 
@@ -24,6 +51,10 @@ public class AuthProvider {
 
     private String providerEmail;
 
+    // Last user-info call for this identity (DelegatingOidcUserService, when-needed mode)
+    @Column(name = "userinfo_fetched_at")
+    private ZonedDateTime userInfoFetchedAt;
+
     // getters/setters
     public Long getId() { return id; }
     public void setId(Long id) { this.id = id; }
@@ -35,4 +66,6 @@ public class AuthProvider {
     public void setProviderUserId(String providerUserId) { this.providerUserId = providerUserId; }
     public String getProviderEmail() { return providerEmail; }
     public void setProviderEmail(String providerEmail) { this.providerEmail = providerEmail; }
+    public ZonedDateTime getUserInfoFetchedAt() { return userInfoFetchedAt; }
+    public void setUserInfoFetchedAt(ZonedDateTime userInfoFetchedAt) { this.userInfoFetchedAt = userInfoFetchedAt; }
 }
@@ -0,0 +1,19 @@
+package com.lada.oauthlogin.model;
+
+import com.lada.oauthlogin.model.AuthProvider.Provider;
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+@Converter
+public class ProviderCodeConverter implements AttributeConverter<Provider, Short> {
+
+    @Override
+    public Short convertToDatabaseColumn(Provider provider) {
+        return provider == null ? null : provider.code();
+    }
+
+    @Override
+    public Provider convertToEntityAttribute(Short code) {
+        return code == null ? null : Provider.fromCode(code);
+    }
+}
@@ -6,13 +6,15 @@ import java.time.ZoneId;
 import java.time.ZonedDateTime;
 
 @Entity
-@Table(name = "users", uniqueConstraints = @UniqueConstraint(columnNames = "email"))
+@Table(name = "users", uniqueConstraints = @UniqueConstraint(name = "uk_users_email", columnNames = "email"))
 public class User {
 
+    private static final ZoneId MANILA = ZoneId.of("Asia/Manila");
+
     @Id @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
-    @Column(nullable = false, unique = true)
+    @Column(nullable = false)
     private String email;
 
     private String displayName;
@@ -29,7 +31,7 @@ public class User {
 
     @PreUpdate
     public void preUpdate() {
-        this.updatedAt = ZonedDateTime.now(ZoneId.of("Asia/Manila"));
+        this.updatedAt = ZonedDateTime.now(MANILA);
     }
 
     // Getters and setters
@@ -0,0 +1,38 @@
+package com.lada.oauthlogin.outbox;
+
+import com.lada.oauthlogin.cache.AvatarCache;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Set;
+
+/** Fetches the thumbnail of a new or backfilled avatar, so the first profile view can already use it. */
+@Component
+public class AvatarRefreshHandler implements OutboxHandler {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final AvatarCache avatarCache;
+
+    public AvatarRefreshHandler(JdbcTemplate jdbcTemplate, AvatarCache avatarCache) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.avatarCache = avatarCache;
+    }
+
+    @Override
+    public Set<OutboxEvent.Type> types() {
+        return Set.of(OutboxEvent.Type.USER_CREATED, OutboxEvent.Type.PROFILE_BACKFILLED);
+    }
+
+    // Reads the stored URL rather than the event's: a backfill may only have filled the display name.
+    // No transaction, so this reads the primary even with replicas configured. Fetches on the dispatcher's
+    // thread, so a failed fetch is retried with the event's backoff.
+    @Override
+    public void handle(OutboxEvent event) throws Exception {
+        List<String> urls = jdbcTemplate.queryForList("SELECT avatar_url FROM users WHERE id = ?",
+                String.class, event.userId());
+        if (!urls.isEmpty()) {
+            avatarCache.refresh(event.userId(), urls.get(0));
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.lada.oauthlogin.outbox;
+
+import com.lada.oauthlogin.model.AuthProvider.Provider;
+import com.lada.oauthlogin.service.IdentityEventLog;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.Set;
+
+/** Audit log lines and the {@link IdentityEventLog} feed, formerly written on the login thread. */
+@Component
+public class IdentityAuditHandler implements OutboxHandler {
+
+    private static final Logger log = LoggerFactory.getLogger(IdentityAuditHandler.class);
+
+    private final IdentityEventLog identityEvents;
+
+    public IdentityAuditHandler(IdentityEventLog identityEvents) {
+        this.identityEvents = identityEvents;
+    }
+
+    @Override
+    public Set<OutboxEvent.Type> types() {
+        return Set.of(OutboxEvent.Type.USER_CREATED, OutboxEvent.Type.PROVIDER_LINKED);
+    }
+
+    @Override
+    public void handle(OutboxEvent event) {
+        String email = event.string("email");
+        switch (event.type()) {
+            case USER_CREATED -> log.info("Created new user: {} (userId={})", email, event.userId());
+            case PROVIDER_LINKED -> {
+                log.info("Linked provider {} to user {} (userId={})", event.string("provider"), email, event.userId());
+                identityEvents.linked(Provider.valueOf(event.string("provider").toUpperCase()),
+                        event.string("providerUserId"), event.userId(), email,
+                        Boolean.parseBoolean(event.string("newUser")));
+            }
+            default -> { }
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.lada.oauthlogin.outbox;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** Appends events to {@code outbox_events} inside the caller's transaction, so they commit or roll back with it. */
+@Component
+public class Outbox {
+
+    private static final String INSERT = """
+            INSERT INTO outbox_events (event_type, user_id, payload, status, attempts, created_at, available_at)
+            VALUES (?, ?, ?, 0, 0, ?, ?)
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+
+    public Outbox(JdbcTemplate jdbcTemplate, ObjectMapper objectMapper) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void append(OutboxEvent.Type type, long userId, Map<String, ?> payload) {
+        OffsetDateTime now = OffsetDateTime.now(ZoneOffset.UTC);
+        jdbcTemplate.update(INSERT, type.code(), userId, json(payload), now, now);
+    }
+
+    // Null values are left out, so callers can pass optional fields straight through
+    public static Map<String, Object> payload(Object... keysAndValues) {
+        Map<String, Object> payload = new LinkedHashMap<>();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            if (keysAndValues[i + 1] != null) {
+                payload.put((String) keysAndValues[i], keysAndValues[i + 1]);
+            }
+        }
+        return payload;
+    }
+
+    private String json(Map<String, ?> payload) {
+        try {
+            return objectMapper.writeValueAsString(payload);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Outbox payload is not serializable", e);
+        }
+    }
+}
@@ -0,0 +1,372 @@
+package com.lada.oauthlogin.outbox;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Delivers {@code outbox_events} to the {@link OutboxHandler}s. Each poll claims a batch of due rows with a
+ * conditional UPDATE (a lease until claimed_until, so several nodes can poll the same table and a crashed
+ * node's claims become due again), runs the handlers on virtual threads with bounded concurrency, deletes
+ * the rows that succeeded and reschedules the rest with exponential backoff. A rescheduled row remembers which
+ * of its handlers already succeeded, and only the others run on the retry. Rows with an event type this
+ * build does not know, or a payload it cannot read, are dead-lettered. Delivery is at least once.
+ */
+@Component
+public class OutboxDispatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(OutboxDispatcher.class);
+
+    static final int PENDING = 0;
+    static final int DEAD = 2;
+
+    private static final String DUE = """
+            SELECT id FROM outbox_events
+            WHERE status = 0 AND available_at <= ? AND (claimed_until IS NULL OR claimed_until < ?)
+            ORDER BY id LIMIT ?
+            """;
+
+    // Re-checks the lease, so of two nodes racing for a row only one update matches it
+    private static final String CLAIM = """
+            UPDATE outbox_events SET claimed_by = :token, claimed_until = :until
+            WHERE id IN (:ids) AND status = 0 AND (claimed_until IS NULL OR claimed_until < :now)
+            """;
+
+    private static final String CLAIMED = """
+            SELECT id, event_type, user_id, payload, attempts, created_at, completed_handlers FROM outbox_events
+            WHERE claimed_by = ? ORDER BY id
+            """;
+
+    // Guarded by the claim token: once a lease has expired and another node holds the row, it is theirs
+    private static final String DELETE = "DELETE FROM outbox_events WHERE claimed_by = :token AND id IN (:ids)";
+
+    private static final String RESCHEDULE = """
+            UPDATE outbox_events SET status = ?, attempts = ?, available_at = ?, last_error = ?,
+                completed_handlers = ?, claimed_by = NULL, claimed_until = NULL
+            WHERE id = ? AND claimed_by = ?
+            """;
+
+    private static final String BACKLOG = "SELECT COUNT(*), MIN(created_at) FROM outbox_events WHERE status = 0";
+    private static final String DEAD_COUNT = "SELECT COUNT(*) FROM outbox_events WHERE status = 2";
+
+    private static final TypeReference<Map<String, Object>> PAYLOAD = new TypeReference<>() {};
+
+    private record Claimed(OutboxEvent event, Set<String> completedHandlers) {}
+
+    // A claimed row no handler can process
+    private record Undeliverable(long id, int attempts, String reason) {}
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbc;
+    private final ObjectMapper objectMapper;
+    private final Map<OutboxEvent.Type, List<OutboxHandler>> handlers = new EnumMap<>(OutboxEvent.Type.class);
+
+    private final boolean enabled;
+    private final int batchSize;
+    private final int maxBatchesPerPoll;
+    private final int maxConcurrency;
+    private final int maxAttempts;
+    private final Duration claimTimeout;
+    private final Duration baseBackoff;
+    private final Duration maxBackoff;
+    private final Duration shutdownTimeout;
+
+    private final String nodeId;
+    private final AtomicLong claimSequence = new AtomicLong();
+    private final Semaphore permits;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private volatile boolean stopping;
+
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder retried = new LongAdder();
+    private final LongAdder deadLettered = new LongAdder();
+    private volatile long pending;
+    private volatile long dead;
+    private volatile OffsetDateTime oldestPending;
+
+    public OutboxDispatcher(JdbcTemplate jdbcTemplate,
+                            ObjectMapper objectMapper,
+                            List<OutboxHandler> handlers,
+                            @Value("${app.outbox.enabled:true}") boolean enabled,
+                            @Value("${app.outbox.batch-size:100}") int batchSize,
+                            @Value("${app.outbox.max-batches-per-poll:20}") int maxBatchesPerPoll,
+                            @Value("${app.outbox.max-concurrency:8}") int maxConcurrency,
+                            @Value("${app.outbox.max-attempts:10}") int maxAttempts,
+                            @Value("${app.outbox.claim-timeout:1m}") Duration claimTimeout,
+                            @Value("${app.outbox.backoff.initial:1s}") Duration baseBackoff,
+                            @Value("${app.outbox.backoff.max:5m}") Duration maxBackoff,
+                            @Value("${app.outbox.shutdown-timeout:10s}") Duration shutdownTimeout) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedJdbc = new NamedParameterJdbcTemplate(jdbcTemplate);
+        this.objectMapper = objectMapper;
+        for (OutboxHandler handler : handlers) {
+            for (OutboxEvent.Type type : handler.types()) {
+                this.handlers.computeIfAbsent(type, t -> new ArrayList<>()).add(handler);
+            }
+        }
+        this.enabled = enabled;
+        this.batchSize = Math.max(1, batchSize);
+        this.maxBatchesPerPoll = Math.max(1, maxBatchesPerPoll);
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.claimTimeout = claimTimeout;
+        this.baseBackoff = baseBackoff;
+        this.maxBackoff = maxBackoff;
+        this.shutdownTimeout = shutdownTimeout;
+        this.permits = new Semaphore(this.maxConcurrency);
+        // claimed_by is VARCHAR(64): up to 40 chars of node id plus ":" and the claim sequence
+        String host = System.getenv().getOrDefault("HOSTNAME", "");
+        String node = (host.isBlank() ? "node" : host) + "-" + UUID.randomUUID().toString().substring(0, 8);
+        this.nodeId = node.length() > 40 ? node.substring(node.length() - 40) : node;
+    }
+
+    @Scheduled(fixedDelayString = "${app.outbox.poll-interval-ms:500}")
+    public void poll() {
+        if (!enabled || stopping) {
+            return;
+        }
+        try {
+            // Keep draining while batches come back full, so a burst of logins does not wait a poll per batch
+            for (int batch = 0; batch < maxBatchesPerPoll && !stopping; batch++) {
+                String token = nodeId + ":" + claimSequence.incrementAndGet();
+                List<Claimed> events = claim(token);
+                if (events.isEmpty()) {
+                    break;
+                }
+                dispatch(token, events);
+                if (events.size() < batchSize) {
+                    break;
+                }
+            }
+            refreshBacklog();
+        } catch (DataAccessException e) {
+            log.warn("Outbox poll failed; retrying next interval", e);
+        }
+    }
+
+    private List<Claimed> claim(String token) {
+        OffsetDateTime now = OffsetDateTime.now(ZoneOffset.UTC);
+        List<Long> ids = jdbcTemplate.queryForList(DUE, Long.class, now, now, batchSize);
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        int claimed = namedJdbc.update(CLAIM, new MapSqlParameterSource()
+                .addValue("token", token)
+                .addValue("until", now.plus(claimTimeout))
+                .addValue("ids", ids)
+                .addValue("now", now));
+        if (claimed == 0) {
+            return List.of();
+        }
+        List<Claimed> events = new ArrayList<>();
+        List<Undeliverable> undeliverable = new ArrayList<>();
+        jdbcTemplate.query(CLAIMED, (RowCallbackHandler) rs -> {
+            String eventType = rs.getString("event_type");
+            OutboxEvent.Type type = knownType(eventType);
+            Map<String, Object> payload = type == null ? null : readPayload(rs.getString("payload"));
+            if (payload != null) {
+                events.add(mapEvent(rs, type, payload));
+            } else {
+                undeliverable.add(new Undeliverable(rs.getLong("id"), rs.getInt("attempts"),
+                        type == null ? "Unknown event type: " + eventType : "Unreadable payload"));
+            }
+        }, token);
+        // Written by a newer build or by hand, and no retry would change that: dead-lettered right away
+        // instead of failing the whole batch or running handlers on an empty payload until max-attempts
+        for (Undeliverable row : undeliverable) {
+            jdbcTemplate.update(RESCHEDULE, DEAD, row.attempts() + 1, now, row.reason(), null, row.id(), token);
+            deadLettered.increment();
+            log.error("Outbox event {}: {}; giving up", row.id(), row.reason());
+        }
+        return events;
+    }
+
+    private void dispatch(String token, List<Claimed> events) {
+        ConcurrentLinkedQueue<Long> done = new ConcurrentLinkedQueue<>();
+        for (Claimed claimed : events) {
+            if (stopping) {
+                // The rest of the batch stays claimed until the lease runs out, then another node (or the next start) takes it
+                break;
+            }
+            permits.acquireUninterruptibly();
+            try {
+                executor.execute(() -> {
+                    OutboxEvent event = claimed.event();
+                    Set<String> completed = new LinkedHashSet<>(claimed.completedHandlers());
+                    try {
+                        deliver(event, completed);
+                        done.add(event.id());
+                    } catch (Exception e) {
+                        reschedule(token, event, completed, e);
+                    } finally {
+                        permits.release();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // Shut down between the check above and here; without the release the barrier below never opens
+                permits.release();
+                break;
+            }
+        }
+        // Wait for the batch: every permit back means every handler of this batch has finished
+        permits.acquireUninterruptibly(maxConcurrency);
+        permits.release(maxConcurrency);
+
+        if (!done.isEmpty()) {
+            namedJdbc.update(DELETE, new MapSqlParameterSource()
+                    .addValue("token", token)
+                    .addValue("ids", List.copyOf(done)));
+            delivered.add(done.size());
+        }
+    }
+
+    // Adds each handler that succeeds to completed, so a failure later in the list does not re-run it
+    private void deliver(OutboxEvent event, Set<String> completed) throws Exception {
+        for (OutboxHandler handler : handlers.getOrDefault(event.type(), List.of())) {
+            String name = handlerName(handler);
+            if (!completed.contains(name)) {
+                handler.handle(event);
+                completed.add(name);
+            }
+        }
+    }
+
+    private void reschedule(String token, OutboxEvent event, Set<String> completed, Exception failure) {
+        int attempts = event.attempts() + 1;
+        boolean giveUp = attempts >= maxAttempts;
+        Duration backoff = baseBackoff.multipliedBy(1L << Math.min(attempts - 1, 20));
+        OffsetDateTime availableAt = OffsetDateTime.now(ZoneOffset.UTC)
+                .plus(backoff.compareTo(maxBackoff) > 0 ? maxBackoff : backoff);
+        String error = String.valueOf(failure);
+        try {
+            jdbcTemplate.update(RESCHEDULE, giveUp ? DEAD : PENDING, attempts, availableAt,
+                    error.length() > 500 ? error.substring(0, 500) : error,
+                    completed.isEmpty() ? null : String.join(",", completed), event.id(), token);
+        } catch (DataAccessException e) {
+            // The lease runs out and the event is claimed again
+            log.warn("Could not reschedule outbox event {}", event.id(), e);
+        }
+        if (giveUp) {
+            deadLettered.increment();
+            log.error("Outbox event {} ({}, userId={}) failed {} times; giving up",
+                    event.id(), event.type().code(), event.userId(), attempts, failure);
+        } else {
+            retried.increment();
+            log.warn("Outbox event {} ({}, userId={}) failed, attempt {}: {}",
+                    event.id(), event.type().code(), event.userId(), attempts, error);
+        }
+    }
+
+    private void refreshBacklog() {
+        jdbcTemplate.query(BACKLOG, (RowCallbackHandler) rs -> {
+            pending = rs.getLong(1);
+            oldestPending = rs.getObject(2, OffsetDateTime.class);
+        });
+        Long deadRows = jdbcTemplate.queryForObject(DEAD_COUNT, Long.class);
+        dead = deadRows == null ? 0 : deadRows;
+    }
+
+    private static OutboxEvent.Type knownType(String code) {
+        try {
+            return OutboxEvent.Type.fromCode(code);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    // null when the payload is not a JSON object
+    private Map<String, Object> readPayload(String json) {
+        try {
+            return json == null ? null : objectMapper.readValue(json, PAYLOAD);
+        } catch (Exception e) {
+            log.warn("Unreadable outbox payload: {}", e.toString());
+            return null;
+        }
+    }
+
+    private Claimed mapEvent(ResultSet rs, OutboxEvent.Type type, Map<String, Object> payload) throws SQLException {
+        String completed = rs.getString("completed_handlers");
+        return new Claimed(new OutboxEvent(rs.getLong("id"), type, rs.getLong("user_id"), payload,
+                rs.getInt("attempts"), rs.getObject("created_at", OffsetDateTime.class)),
+                completed == null || completed.isEmpty() ? Set.of() : Set.of(completed.split(",")));
+    }
+
+    private static String handlerName(OutboxHandler handler) {
+        return ClassUtils.getUserClass(handler).getSimpleName();
+    }
+
+    // Stops claiming, lets running handlers finish for up to shutdown-timeout, then interrupts them.
+    // Undelivered claims are picked up again once their lease expires
+    @PreDestroy
+    void shutdown() {
+        stopping = true;
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(shutdownTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                log.warn("Outbox handlers still running after {}; interrupting them", shutdownTimeout);
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public long delivered() {
+        return delivered.sum();
+    }
+
+    public long retried() {
+        return retried.sum();
+    }
+
+    public long deadLettered() {
+        return deadLettered.sum();
+    }
+
+    public long pending() {
+        return pending;
+    }
+
+    public long dead() {
+        return dead;
+    }
+
+    /** Age of the oldest undelivered event as of the last poll, 0 when the outbox is empty. */
+    public double lagSeconds() {
+        OffsetDateTime oldest = oldestPending;
+        return oldest == null ? 0 : Math.max(0, Duration.between(oldest, OffsetDateTime.now(ZoneOffset.UTC)).toMillis() / 1000.0);
+    }
+}
@@ -0,0 +1,26 @@
+package com.lada.oauthlogin.outbox;
+
+import java.time.OffsetDateTime;
+import java.util.Map;
+
+/** A claimed outbox row; {@code attempts} counts earlier failed deliveries. */
+public record OutboxEvent(long id, Type type, long userId, Map<String, Object> payload, int attempts,
+                          OffsetDateTime createdAt) {
+
+    public enum Type {
+        USER_CREATED, PROVIDER_LINKED, PROFILE_BACKFILLED;
+
+        public String code() {
+            return name().toLowerCase();
+        }
+
+        public static Type fromCode(String code) {
+            return valueOf(code.toUpperCase());
+        }
+    }
+
+    public String string(String key) {
+        Object value = payload.get(key);
+        return value == null ? null : value.toString();
+    }
+}
@@ -0,0 +1,15 @@
+package com.lada.oauthlogin.outbox;
+
+import java.util.Set;
+
+/**
+ * Processes outbox events of the given types. When one of an event's handlers fails, the retry only runs the
+ * handlers that have not succeeded yet (tracked by class name). Delivery is still at least once (a claim can
+ * expire while the event is being handled), so a handler may see an event twice and must tolerate it.
+ */
+public interface OutboxHandler {
+
+    Set<OutboxEvent.Type> types();
+
+    void handle(OutboxEvent event) throws Exception;
+}
@@ -4,10 +4,27 @@ import com.lada.oauthlogin.model.AuthProvider;
 import com.lada.oauthlogin.model.AuthProvider.Provider;
 import com.lada.oauthlogin.model.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 public interface AuthProviderRepository extends JpaRepository<AuthProvider, Long> {
     Optional<AuthProvider> findByProviderAndProviderUserId(Provider provider, String providerUserId);
     Optional<AuthProvider> findByProviderAndUser(AuthProvider.Provider provider, User user);
+
+    @Query("""
+            select a.user.id as userId, a.provider as provider, a.providerUserId as providerUserId,
+                   a.providerEmail as providerEmail
+            from AuthProvider a where a.user.id = :userId order by a.provider""")
+    List<LinkedProviderView> findLinkedByUserId(@Param("userId") Long userId);
+
+    // One query for a whole page of users (ix_auth_providers_user), instead of one per user
+    @Query("""
+            select a.user.id as userId, a.provider as provider, a.providerUserId as providerUserId,
+                   a.providerEmail as providerEmail
+            from AuthProvider a where a.user.id in :userIds order by a.user.id, a.provider""")
+    List<LinkedProviderView> findLinkedByUserIdIn(@Param("userIds") Collection<Long> userIds);
 }
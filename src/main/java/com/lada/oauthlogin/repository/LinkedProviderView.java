@@ -0,0 +1,11 @@
+package com.lada.oauthlogin.repository;
+
+import com.lada.oauthlogin.model.AuthProvider.Provider;
+
+// Read-only projection of a provider link; reads auth_providers only (user_id is the FK column, no join)
+public interface LinkedProviderView {
+    Long getUserId();
+    Provider getProvider();
+    String getProviderUserId();
+    String getProviderEmail();
+}
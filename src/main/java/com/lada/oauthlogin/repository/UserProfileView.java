@@ -0,0 +1,13 @@
+package com.lada.oauthlogin.repository;
+
+import java.time.ZonedDateTime;
+
+// Read-only projection for the profile endpoint; no managed entity, no dirty checking
+public interface UserProfileView {
+    Long getId();
+    String getEmail();
+    String getDisplayName();
+    String getAvatarUrl();
+    String getBio();
+    ZonedDateTime getUpdatedAt();
+}
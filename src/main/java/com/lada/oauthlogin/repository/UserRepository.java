@@ -1,9 +1,22 @@
 package com.lada.oauthlogin.repository;
 
 import com.lada.oauthlogin.model.User;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
 import java.util.Optional;
 
 public interface UserRepository extends JpaRepository<User, Long> {
     Optional<User> findByEmail(String email);
+    Optional<UserProfileView> findProfileById(Long id);
+
+    // Keyset page: cost does not grow with the position in the table, unlike OFFSET
+    @Query("""
+            select u.id as id, u.email as email, u.displayName as displayName, u.avatarUrl as avatarUrl,
+                   u.bio as bio, u.updatedAt as updatedAt
+            from User u where u.id > :afterId order by u.id""")
+    List<UserProfileView> findProfilesAfter(@Param("afterId") long afterId, Limit limit);
 }
@@ -0,0 +1,59 @@
+package com.lada.oauthlogin.security;
+
+import org.springframework.security.oauth2.core.oidc.IdTokenClaimNames;
+import org.springframework.security.oauth2.core.oidc.OidcIdToken;
+import org.springframework.security.oauth2.core.oidc.OidcUserInfo;
+import org.springframework.security.oauth2.core.oidc.user.OidcUser;
+
+import java.io.Serial;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * OIDC flavour of {@link AppUserPrincipal}. Keeps the ID token value (needed as id_token_hint for
+ * RP-initiated logout) but only its registered claims, and no separate user-info claims.
+ */
+public class AppOidcUserPrincipal extends AppUserPrincipal implements OidcUser {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    private static final List<String> RETAINED_CLAIMS = List.of(
+            IdTokenClaimNames.ISS, IdTokenClaimNames.SUB, IdTokenClaimNames.AUD,
+            IdTokenClaimNames.IAT, IdTokenClaimNames.EXP);
+
+    private final OidcIdToken idToken;
+
+    public AppOidcUserPrincipal(AppUserPrincipal user, OidcIdToken idToken) {
+        super(user.getUserId(), user.getProvider(), user.getEmail(), user.getDisplayName(), user.getAvatarUrl(),
+                user.getName(), user.getAuthorities(), user.getRawAttributes());
+        this.idToken = slim(idToken);
+    }
+
+    @Override
+    public Map<String, Object> getClaims() {
+        return idToken.getClaims();
+    }
+
+    @Override
+    public OidcUserInfo getUserInfo() {
+        return null;
+    }
+
+    @Override
+    public OidcIdToken getIdToken() {
+        return idToken;
+    }
+
+    static OidcIdToken slim(OidcIdToken token) {
+        Map<String, Object> claims = new HashMap<>(8);
+        for (String name : RETAINED_CLAIMS) {
+            Object value = token.getClaims().get(name);
+            if (value != null) {
+                claims.put(name, value);
+            }
+        }
+        return new OidcIdToken(token.getTokenValue(), token.getIssuedAt(), token.getExpiresAt(), claims);
+    }
+}
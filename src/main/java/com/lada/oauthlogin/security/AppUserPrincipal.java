@@ -0,0 +1,104 @@
+package com.lada.oauthlogin.security;
+
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.oauth2.core.user.OAuth2User;
+
+import java.io.Serial;
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable authenticated principal kept in the session: internal user id, provider, email,
+ * display name and avatar only. The provider's raw attribute map is held transiently for the
+ * login request and is not retained in (or serialized with) the session.
+ */
+public class AppUserPrincipal implements OAuth2User, Serializable {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    public static final List<GrantedAuthority> USER_AUTHORITIES = List.of(new SimpleGrantedAuthority("ROLE_USER"));
+
+    private final long userId;
+    private final String provider;
+    private final String email;
+    private final String displayName;
+    private final String avatarUrl;
+    private final String name;
+    private final List<GrantedAuthority> authorities;
+
+    private transient Map<String, Object> rawAttributes;
+    private transient Map<String, Object> attributes;
+
+    public AppUserPrincipal(long userId, String provider, String email, String displayName, String avatarUrl,
+                            String name, Collection<? extends GrantedAuthority> authorities,
+                            Map<String, Object> rawAttributes) {
+        this.userId = userId;
+        this.provider = provider;
+        this.email = email;
+        this.displayName = displayName;
+        this.avatarUrl = avatarUrl;
+        this.name = name != null ? name : email;
+        this.authorities = List.copyOf(authorities);
+        this.rawAttributes = rawAttributes;
+    }
+
+    public long getUserId() { return userId; }
+    public String getProvider() { return provider; }
+    public String getEmail() { return email; }
+    public String getDisplayName() { return displayName; }
+    public String getAvatarUrl() { return avatarUrl; }
+
+    // Provider attributes as returned at login; after the principal is restored from a session
+    // only the compact view from getAttributes() is available
+    public Map<String, Object> getRawAttributes() {
+        return rawAttributes != null ? rawAttributes : getAttributes();
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Collection<? extends GrantedAuthority> getAuthorities() {
+        return authorities;
+    }
+
+    // Same keys the frontend and controllers used on the old attribute map, built on first use
+    @Override
+    public Map<String, Object> getAttributes() {
+        Map<String, Object> view = attributes;
+        if (view == null) {
+            Map<String, Object> m = new HashMap<>(8);
+            m.put("userId", userId);
+            m.put("provider", provider);
+            m.put("email", email);
+            if (displayName != null) m.put("name", displayName);
+            if (avatarUrl != null) m.put("picture", avatarUrl);
+            view = Collections.unmodifiableMap(m);
+            attributes = view;
+        }
+        return view;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof AppUserPrincipal other && userId == other.userId && provider.equals(other.provider);
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(userId) * 31 + provider.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "AppUserPrincipal[userId=" + userId + ", provider=" + provider + ", email=" + email + "]";
+    }
+}
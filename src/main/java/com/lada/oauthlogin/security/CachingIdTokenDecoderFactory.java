@@ -0,0 +1,100 @@
+package com.lada.oauthlogin.security;
+
+import com.lada.oauthlogin.metrics.LoginMetrics;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.KeySourceException;
+import com.nimbusds.jose.proc.SecurityContext;
+import com.nimbusds.jwt.proc.DefaultJWTProcessor;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.security.oauth2.client.oidc.authentication.OidcIdTokenDecoderFactory;
+import org.springframework.security.oauth2.client.oidc.authentication.OidcIdTokenValidator;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.core.DelegatingOAuth2TokenValidator;
+import org.springframework.security.oauth2.core.OAuth2AuthenticationException;
+import org.springframework.security.oauth2.core.OAuth2Error;
+import org.springframework.security.oauth2.core.converter.ClaimTypeConverter;
+import org.springframework.security.oauth2.jwt.BadJwtException;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.JwtDecoderFactory;
+import org.springframework.security.oauth2.jwt.JwtException;
+import org.springframework.security.oauth2.jwt.JwtTimestampValidator;
+import org.springframework.security.oauth2.jwt.NimbusJwtDecoder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * ID token decoders for oauth2Login, one per registration, verifying against {@link JwksKeyCache} instead of
+ * the per-decoder remote JWK source. Validation matches the default {@link OidcIdTokenDecoderFactory}:
+ * RS256 signatures, timestamps, {@link OidcIdTokenValidator} and the standard claim type conversion.
+ */
+@Component
+public class CachingIdTokenDecoderFactory implements JwtDecoderFactory<ClientRegistration> {
+
+    private static final Converter<Map<String, Object>, Map<String, Object>> CLAIM_TYPES =
+            new ClaimTypeConverter(OidcIdTokenDecoderFactory.createDefaultClaimTypeConverters());
+
+    private final JwksKeyCache keys;
+    private final LoginMetrics metrics;
+    private final Map<String, JwtDecoder> decoders = new ConcurrentHashMap<>();
+
+    public CachingIdTokenDecoderFactory(JwksKeyCache keys, LoginMetrics metrics) {
+        this.keys = keys;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public JwtDecoder createDecoder(ClientRegistration registration) {
+        return decoders.computeIfAbsent(registration.getRegistrationId(), id -> timed(id, build(registration)));
+    }
+
+    private NimbusJwtDecoder build(ClientRegistration registration) {
+        String jwkSetUri = registration.getProviderDetails().getJwkSetUri();
+        if (!StringUtils.hasText(jwkSetUri)) {
+            throw new OAuth2AuthenticationException(new OAuth2Error("missing_signature_verifier",
+                    "No jwk-set-uri configured for registration " + registration.getRegistrationId(), null));
+        }
+
+        DefaultJWTProcessor<SecurityContext> processor = new DefaultJWTProcessor<>();
+        processor.setJWSKeySelector((header, context) -> {
+            if (!JWSAlgorithm.RS256.equals(header.getAlgorithm())) {
+                return List.of();
+            }
+            try {
+                return keys.select(jwkSetUri, header.getKeyID(), header.getAlgorithm());
+            } catch (RuntimeException e) {
+                throw new KeySourceException(e.getMessage(), e);
+            }
+        });
+        // Claims are checked by the Spring validators below
+        processor.setJWTClaimsSetVerifier((claims, context) -> { });
+
+        NimbusJwtDecoder decoder = new NimbusJwtDecoder(processor);
+        decoder.setJwtValidator(new DelegatingOAuth2TokenValidator<>(
+                new JwtTimestampValidator(), new OidcIdTokenValidator(registration)));
+        decoder.setClaimSetConverter(CLAIM_TYPES);
+        return decoder;
+    }
+
+    private JwtDecoder timed(String registrationId, JwtDecoder decoder) {
+        return token -> {
+            Timer.Sample sample = metrics.start();
+            try {
+                Jwt jwt = decoder.decode(token);
+                metrics.idTokenVerification(sample, registrationId, "success");
+                return jwt;
+            } catch (BadJwtException e) {
+                metrics.idTokenVerification(sample, registrationId, "invalid");
+                throw e;
+            } catch (JwtException e) {
+                metrics.idTokenVerification(sample, registrationId, "error");
+                throw e;
+            }
+        };
+    }
+}
@@ -0,0 +1,244 @@
+package com.lada.oauthlogin.security;
+
+import com.lada.oauthlogin.metrics.LoginMetrics;
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.jwk.ECKey;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.KeyUse;
+import com.nimbusds.jose.jwk.RSAKey;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.client.registration.ClientRegistrationRepository;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import org.springframework.web.client.RestTemplate;
+
+import java.security.Key;
+import java.security.PublicKey;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.RSAPublicKey;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Parsed provider signing keys per JWKS URI. Keys are fetched when the application is ready, converted to
+ * {@link PublicKey} once and shared by every verification. A snapshot older than {@code refresh-after} is
+ * still served while one background refresh replaces it; only a snapshot older than {@code expire-after}
+ * (or an unknown {@code kid}, at most once per {@code min-refresh-interval}) makes a caller wait for the fetch.
+ */
+@Component
+public class JwksKeyCache {
+
+    private static final Logger log = LoggerFactory.getLogger(JwksKeyCache.class);
+
+    private record Snapshot(Map<String, PublicKey> byKid, List<PublicKey> all, long fetchedAtNanos) {}
+
+    private final ClientRegistrationRepository registrations;
+    private final LoginMetrics metrics;
+    private final RestTemplate rest;
+    private final long refreshAfterNanos;
+    private final long expireAfterNanos;
+    private final long minRefreshIntervalNanos;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    public JwksKeyCache(ClientRegistrationRepository registrations,
+                        LoginMetrics metrics,
+                        @Value("${app.oidc.jwks.refresh-after:5m}") Duration refreshAfter,
+                        @Value("${app.oidc.jwks.expire-after:24h}") Duration expireAfter,
+                        @Value("${app.oidc.jwks.min-refresh-interval:30s}") Duration minRefreshInterval,
+                        @Value("${app.oidc.jwks.fetch-timeout:5s}") Duration fetchTimeout) {
+        this.registrations = registrations;
+        this.metrics = metrics;
+        this.refreshAfterNanos = refreshAfter.toNanos();
+        this.expireAfterNanos = expireAfter.toNanos();
+        this.minRefreshIntervalNanos = minRefreshInterval.toNanos();
+
+        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout(fetchTimeout);
+        requestFactory.setReadTimeout(fetchTimeout);
+        this.rest = new RestTemplate(requestFactory);
+    }
+
+    // Runs before readiness flips to ACCEPTING_TRAFFIC, so the first logins on a new node find warm keys
+    @EventListener(ApplicationReadyEvent.class)
+    public void prefetch() {
+        if (!(registrations instanceof Iterable<?> all)) {
+            return;
+        }
+        for (Object candidate : all) {
+            String uri = ((ClientRegistration) candidate).getProviderDetails().getJwkSetUri();
+            if (StringUtils.hasText(uri)) {
+                try {
+                    entry(uri).refreshNow();
+                } catch (RuntimeException e) {
+                    log.warn("JWKS prefetch failed for {}: {}", uri, e.toString());
+                }
+            }
+        }
+    }
+
+    /** Candidate verification keys for a JWS header: the key with that kid, or every compatible key if none. */
+    public List<Key> select(String jwkSetUri, String kid, JWSAlgorithm algorithm) {
+        Entry entry = entry(jwkSetUri);
+        List<Key> keys = match(entry.current(), kid, algorithm);
+        if (keys.isEmpty() && kid != null && entry.mayForceRefresh()) {
+            // Likely a key rotation: the provider signs with a key we have not seen yet
+            keys = match(entry.refreshNow(), kid, algorithm);
+        }
+        return keys;
+    }
+
+    private Entry entry(String uri) {
+        return entries.computeIfAbsent(uri, Entry::new);
+    }
+
+    private static List<Key> match(Snapshot snapshot, String kid, JWSAlgorithm algorithm) {
+        if (kid != null) {
+            PublicKey key = snapshot.byKid().get(kid);
+            return key != null && compatible(key, algorithm) ? List.of(key) : List.of();
+        }
+        List<Key> keys = new ArrayList<>(snapshot.all().size());
+        for (PublicKey key : snapshot.all()) {
+            if (compatible(key, algorithm)) {
+                keys.add(key);
+            }
+        }
+        return keys;
+    }
+
+    private static boolean compatible(PublicKey key, JWSAlgorithm algorithm) {
+        return (key instanceof RSAPublicKey && JWSAlgorithm.Family.RSA.contains(algorithm))
+                || (key instanceof ECPublicKey && JWSAlgorithm.Family.EC.contains(algorithm));
+    }
+
+    private Snapshot fetch(String uri) {
+        Timer.Sample sample = metrics.start();
+        try {
+            JWKSet set = JWKSet.parse(rest.getForObject(uri, String.class));
+            Map<String, PublicKey> byKid = new HashMap<>();
+            List<PublicKey> all = new ArrayList<>();
+            for (JWK jwk : set.getKeys()) {
+                if (jwk.getKeyUse() != null && !KeyUse.SIGNATURE.equals(jwk.getKeyUse())) {
+                    continue;
+                }
+                PublicKey key = toPublicKey(jwk);
+                if (key != null) {
+                    all.add(key);
+                    if (jwk.getKeyID() != null) {
+                        byKid.put(jwk.getKeyID(), key);
+                    }
+                }
+            }
+            metrics.jwksFetch(sample, "success");
+            log.debug("Fetched {} signing keys from {}", all.size(), uri);
+            return new Snapshot(Map.copyOf(byKid), List.copyOf(all), System.nanoTime());
+        } catch (Exception e) {
+            metrics.jwksFetch(sample, "error");
+            throw new IllegalStateException("JWKS fetch failed for " + uri, e);
+        }
+    }
+
+    private static PublicKey toPublicKey(JWK jwk) {
+        try {
+            if (jwk instanceof RSAKey rsa) {
+                return rsa.toRSAPublicKey();
+            }
+            if (jwk instanceof ECKey ec) {
+                return ec.toECPublicKey();
+            }
+        } catch (JOSEException e) {
+            log.warn("Skipping unusable JWK {}: {}", jwk.getKeyID(), e.getMessage());
+        }
+        return null;
+    }
+
+    private final class Entry {
+
+        private final String uri;
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+        private final ReentrantLock lock = new ReentrantLock();
+        private volatile Snapshot snapshot;
+        private volatile long lastForcedNanos;
+
+        Entry(String uri) {
+            this.uri = uri;
+        }
+
+        Snapshot current() {
+            Snapshot s = snapshot;
+            if (s == null) {
+                return refreshNow();
+            }
+            long age = System.nanoTime() - s.fetchedAtNanos();
+            if (age > expireAfterNanos) {
+                return refreshNow();
+            }
+            if (age > refreshAfterNanos) {
+                refreshInBackground();
+            }
+            return s;
+        }
+
+        boolean mayForceRefresh() {
+            long now = System.nanoTime();
+            long last = lastForcedNanos;
+            if (last != 0 && now - last < minRefreshIntervalNanos) {
+                return false;
+            }
+            lastForcedNanos = now;
+            return true;
+        }
+
+        // Blocking refresh; concurrent callers wait on the lock and reuse the result of the first one
+        Snapshot refreshNow() {
+            lock.lock();
+            try {
+                Snapshot before = snapshot;
+                if (before != null && System.nanoTime() - before.fetchedAtNanos() < minRefreshIntervalNanos) {
+                    return before;
+                }
+                try {
+                    snapshot = fetch(uri);
+                } catch (RuntimeException e) {
+                    if (before == null) {
+                        throw e;
+                    }
+                    log.warn("{}; keeping keys fetched {}s ago", e.getMessage(),
+                            Duration.ofNanos(System.nanoTime() - before.fetchedAtNanos()).toSeconds());
+                }
+                return snapshot;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void refreshInBackground() {
+            if (!refreshing.compareAndSet(false, true)) {
+                return;
+            }
+            Thread.ofVirtual().name("jwks-refresh").start(() -> {
+                try {
+                    refreshNow();
+                } catch (RuntimeException e) {
+                    log.warn(e.getMessage());
+                } finally {
+                    refreshing.set(false);
+                }
+            });
+        }
+    }
+}
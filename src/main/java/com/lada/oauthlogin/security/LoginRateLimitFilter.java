@@ -0,0 +1,59 @@
+package com.lada.oauthlogin.security;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rate-limits the login entry points (authorization redirect, provider callback, Google ID token post) with
+ * {@link LoginRateLimiter}. Sits ahead of the security context and session handling, so a rejected request
+ * costs a path check, two CAS operations and a bodiless 429.
+ */
+public class LoginRateLimitFilter extends OncePerRequestFilter {
+
+    private static final String AUTHORIZATION = "/oauth2/authorization/";
+    private static final String CALLBACK = "/login/oauth2/code/";
+    private static final String GOOGLE_VERIFY = "/auth/google/verify";
+
+    private final LoginRateLimiter limiter;
+
+    public LoginRateLimitFilter(LoginRateLimiter limiter) {
+        this.limiter = limiter;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String registrationId = registrationId(request.getRequestURI());
+        if (registrationId != null) {
+            // getRemoteAddr is the client only behind a proxy that Tomcat trusts (server.forward-headers-strategy)
+            long wait = limiter.tryAcquire(request.getRemoteAddr(), registrationId);
+            if (wait > 0) {
+                response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+                response.setHeader("Retry-After", Long.toString(Math.max(1, TimeUnit.NANOSECONDS.toSeconds(wait + 999_999_999))));
+                return;
+            }
+        }
+        chain.doFilter(request, response);
+    }
+
+    // Registration id for a login path, null for everything else
+    static String registrationId(String uri) {
+        if (uri.startsWith(AUTHORIZATION)) {
+            return uri.substring(AUTHORIZATION.length());
+        }
+        if (uri.startsWith(CALLBACK)) {
+            return uri.substring(CALLBACK.length());
+        }
+        if (uri.equals(GOOGLE_VERIFY)) {
+            return "google";
+        }
+        return null;
+    }
+}
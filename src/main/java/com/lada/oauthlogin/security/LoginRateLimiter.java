@@ -0,0 +1,182 @@
+package com.lada.oauthlogin.security;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.client.registration.ClientRegistrationRepository;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Token-bucket admission for the login entry points, implemented as GCRA: each bucket is a single
+ * {@link AtomicLong} holding its theoretical arrival time, updated with one CAS and no locks. There is one
+ * bucket per client IP (a bounded map, swept once buckets are full again) and one per registration.
+ */
+@Component
+public class LoginRateLimiter {
+
+    private static final Logger log = LoggerFactory.getLogger(LoginRateLimiter.class);
+
+    private static final String OTHER = "other";
+
+    // With the IP map full, a new IP triggers at most one sweep per interval; the others fail open without scanning
+    static final long INLINE_SWEEP_INTERVAL_NANOS = Duration.ofSeconds(1).toNanos();
+
+    /** Rate and burst of one bucket kind, in nanoseconds. */
+    static final class Limit {
+
+        final long intervalNanos;
+        final long toleranceNanos;
+
+        Limit(int permits, Duration per, int burst) {
+            this.intervalNanos = per.toNanos() / Math.max(1, permits);
+            this.toleranceNanos = intervalNanos * Math.max(1, burst);
+        }
+
+        // 0 if admitted, otherwise nanoseconds until the next request would be
+        long acquire(AtomicLong tat, long now) {
+            while (true) {
+                long current = tat.get();
+                long next = Math.max(current, now) + intervalNanos;
+                long excess = next - now - toleranceNanos;
+                if (excess > 0) {
+                    return excess;
+                }
+                if (tat.compareAndSet(current, next)) {
+                    return 0;
+                }
+            }
+        }
+    }
+
+    private final boolean enabled;
+    private final Limit ipLimit;
+    private final Limit providerLimit;
+    private final int maxTrackedIps;
+    private final LongSupplier clock;
+
+    private final ConcurrentHashMap<String, AtomicLong> ipBuckets = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> providerBuckets = new HashMap<>();
+    private final AtomicLong nextInlineSweep;
+
+    private final LongAdder rejectedIp = new LongAdder();
+    private final LongAdder rejectedProvider = new LongAdder();
+    private final LongAdder untracked = new LongAdder();
+
+    @Autowired
+    public LoginRateLimiter(ClientRegistrationRepository registrations,
+                            @Value("${app.ratelimit.enabled:true}") boolean enabled,
+                            @Value("${app.ratelimit.ip.permits:20}") int ipPermits,
+                            @Value("${app.ratelimit.ip.per:1m}") Duration ipPer,
+                            @Value("${app.ratelimit.ip.burst:10}") int ipBurst,
+                            @Value("${app.ratelimit.provider.permits:200}") int providerPermits,
+                            @Value("${app.ratelimit.provider.per:1s}") Duration providerPer,
+                            @Value("${app.ratelimit.provider.burst:400}") int providerBurst,
+                            @Value("${app.ratelimit.ip.max-tracked:100000}") int maxTrackedIps) {
+        this(enabled, new Limit(ipPermits, ipPer, ipBurst), new Limit(providerPermits, providerPer, providerBurst),
+                maxTrackedIps, System::nanoTime, registrationIds(registrations));
+    }
+
+    LoginRateLimiter(boolean enabled, Limit ipLimit, Limit providerLimit, int maxTrackedIps, LongSupplier clock,
+                     Collection<String> registrationIds) {
+        this.enabled = enabled;
+        this.ipLimit = ipLimit;
+        this.providerLimit = providerLimit;
+        this.maxTrackedIps = maxTrackedIps;
+        this.clock = clock;
+        // Started at the clock's current value like the IP buckets: nanoTime has an arbitrary, possibly negative origin
+        long now = clock.getAsLong();
+        for (String registrationId : registrationIds) {
+            providerBuckets.put(registrationId, new AtomicLong(now));
+        }
+        // Unknown registration ids share one bucket, so request paths cannot grow the map
+        providerBuckets.put(OTHER, new AtomicLong(now));
+        this.nextInlineSweep = new AtomicLong(now);
+    }
+
+    private static List<String> registrationIds(ClientRegistrationRepository registrations) {
+        List<String> ids = new ArrayList<>();
+        if (registrations instanceof Iterable<?> all) {
+            for (Object candidate : all) {
+                ids.add(((ClientRegistration) candidate).getRegistrationId());
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Charges one request to the client's and the provider's buckets.
+     *
+     * @return 0 if admitted, otherwise the nanoseconds until a retry can succeed
+     */
+    public long tryAcquire(String clientIp, String registrationId) {
+        if (!enabled) {
+            return 0;
+        }
+        long now = clock.getAsLong();
+        AtomicLong ipBucket = ipBucket(clientIp, now);
+        if (ipBucket != null) {
+            long wait = ipLimit.acquire(ipBucket, now);
+            if (wait > 0) {
+                rejectedIp.increment();
+                return wait;
+            }
+        }
+        // The IP permit is not refunded on a provider rejection; a client hammering a saturated provider pays for it
+        AtomicLong providerBucket = providerBuckets.get(registrationId);
+        long wait = providerLimit.acquire(providerBucket != null ? providerBucket : providerBuckets.get(OTHER), now);
+        if (wait > 0) {
+            rejectedProvider.increment();
+        }
+        return wait;
+    }
+
+    private AtomicLong ipBucket(String clientIp, long now) {
+        AtomicLong bucket = ipBuckets.get(clientIp);
+        if (bucket != null) {
+            return bucket;
+        }
+        if (ipBuckets.size() >= maxTrackedIps) {
+            long due = nextInlineSweep.get();
+            if (now - due >= 0 && nextInlineSweep.compareAndSet(due, now + INLINE_SWEEP_INTERVAL_NANOS)) {
+                sweep(now);
+            }
+            if (ipBuckets.size() >= maxTrackedIps) {
+                // Fail open per IP rather than refuse everyone new; the provider bucket still caps the total
+                untracked.increment();
+                return null;
+            }
+        }
+        return ipBuckets.computeIfAbsent(clientIp, k -> new AtomicLong(now));
+    }
+
+    // A bucket whose arrival time has passed is full again, indistinguishable from an absent one
+    @Scheduled(fixedDelayString = "${app.ratelimit.sweep-interval-ms:30000}")
+    public void sweep() {
+        int before = ipBuckets.size();
+        sweep(clock.getAsLong());
+        log.debug("Rate-limit sweep: {} -> {} tracked IPs", before, ipBuckets.size());
+    }
+
+    private void sweep(long now) {
+        ipBuckets.values().removeIf(tat -> tat.get() - now <= 0);
+    }
+
+    public int trackedIps() { return ipBuckets.size(); }
+    public long rejectedIp() { return rejectedIp.sum(); }
+    public long rejectedProvider() { return rejectedProvider.sum(); }
+    public long untracked() { return untracked.sum(); }
+}
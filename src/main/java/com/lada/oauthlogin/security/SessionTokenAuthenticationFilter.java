@@ -0,0 +1,54 @@
+package com.lada.oauthlogin.security;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * Authenticates requests from the {@link SessionTokenService#COOKIE_NAME} cookie.
+ * Never creates a session and never reads the database.
+ */
+public class SessionTokenAuthenticationFilter extends OncePerRequestFilter {
+
+    private final SessionTokenService tokens;
+
+    public SessionTokenAuthenticationFilter(SessionTokenService tokens) {
+        this.tokens = tokens;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        if (SecurityContextHolder.getContext().getAuthentication() == null) {
+            String token = cookie(request);
+            if (token != null) {
+                tokens.verify(token).ifPresent(claims -> {
+                    SecurityContext context = SecurityContextHolder.createEmptyContext();
+                    context.setAuthentication(tokens.authentication(claims));
+                    SecurityContextHolder.setContext(context);
+                });
+            }
+        }
+        chain.doFilter(request, response);
+    }
+
+    private static String cookie(HttpServletRequest request) {
+        Cookie[] cookies = request.getCookies();
+        if (cookies == null) {
+            return null;
+        }
+        for (Cookie c : cookies) {
+            if (SessionTokenService.COOKIE_NAME.equals(c.getName())) {
+                return c.getValue();
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,175 @@
+package com.lada.oauthlogin.security;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.oauth2.client.authentication.OAuth2AuthenticationToken;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Issues and verifies compact HMAC-SHA256 signed tokens for the stateless auth mode.
+ * Format: {@code <kid>.<base64url payload>.<base64url signature>}. Keys (current plus previous,
+ * for rotation) are decoded once at startup and verification only clones a pre-initialised {@link Mac}.
+ * The token carries identity only; profile fields are read by user id, so a profile edit never leaves
+ * stale data in an unexpired token.
+ */
+@Component
+public class SessionTokenService {
+
+    private static final Logger log = LoggerFactory.getLogger(SessionTokenService.class);
+
+    public static final String COOKIE_NAME = "AUTH_TOKEN";
+
+    private static final String ALGORITHM = "HmacSHA256";
+    // Version 1 also carried name and picture; those tokens are rejected and the user logs in again
+    private static final byte VERSION = 2;
+    private static final Base64.Encoder B64 = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder B64D = Base64.getUrlDecoder();
+
+    public record Claims(long userId, String provider, String email, String providerUserId, Instant expiresAt) {}
+
+    private final String currentKid;
+    private final Map<String, Mac> macs;
+    private final Duration ttl;
+
+    public SessionTokenService(@Value("${app.auth.token.secret:}") String secret,
+                               @Value("${app.auth.token.previous-secrets:}") List<String> previousSecrets,
+                               @Value("${app.auth.token.ttl:8h}") Duration ttl) {
+        this.ttl = ttl;
+        byte[] current;
+        if (secret == null || secret.isBlank()) {
+            log.warn("app.auth.token.secret is not set; using a random per-process key (tokens will not survive restarts or work across nodes)");
+            current = new byte[32];
+            new SecureRandom().nextBytes(current);
+        } else {
+            current = Base64.getDecoder().decode(secret.trim());
+        }
+
+        Map<String, Mac> keys = new LinkedHashMap<>();
+        this.currentKid = kid(current);
+        keys.put(currentKid, initMac(current));
+        for (String previous : previousSecrets) {
+            if (!previous.isBlank()) {
+                byte[] bytes = Base64.getDecoder().decode(previous.trim());
+                keys.putIfAbsent(kid(bytes), initMac(bytes));
+            }
+        }
+        this.macs = Map.copyOf(keys);
+    }
+
+    public Duration ttl() {
+        return ttl;
+    }
+
+    public String issue(long userId, String provider, String email, String providerUserId) {
+        Claims claims = new Claims(userId, provider, email, providerUserId, Instant.now().plus(ttl));
+        String signingInput = currentKid + "." + B64.encodeToString(encode(claims));
+        return signingInput + "." + B64.encodeToString(sign(currentKid, signingInput));
+    }
+
+    public Optional<Claims> verify(String token) {
+        if (token == null) {
+            return Optional.empty();
+        }
+        int first = token.indexOf('.');
+        int last = token.lastIndexOf('.');
+        if (first <= 0 || last <= first) {
+            return Optional.empty();
+        }
+        String kid = token.substring(0, first);
+        if (!macs.containsKey(kid)) {
+            return Optional.empty();
+        }
+        try {
+            byte[] expected = sign(kid, token.substring(0, last));
+            byte[] actual = B64D.decode(token.substring(last + 1));
+            if (!MessageDigest.isEqual(expected, actual)) {
+                return Optional.empty();
+            }
+            Claims claims = decode(B64D.decode(token.substring(first + 1, last)));
+            return claims.expiresAt().isAfter(Instant.now()) ? Optional.of(claims) : Optional.empty();
+        } catch (IllegalArgumentException | IOException e) {
+            return Optional.empty();
+        }
+    }
+
+    // getName() is the provider user id, as for the session principal built at login
+    public OAuth2AuthenticationToken authentication(Claims claims) {
+        AppUserPrincipal principal = new AppUserPrincipal(claims.userId(), claims.provider(), claims.email(),
+                null, null, claims.providerUserId(), AppUserPrincipal.USER_AUTHORITIES, null);
+        return new OAuth2AuthenticationToken(principal, principal.getAuthorities(), claims.provider());
+    }
+
+    private byte[] sign(String kid, String signingInput) {
+        Mac mac;
+        try {
+            mac = (Mac) macs.get(kid).clone();
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException(ALGORITHM + " provider does not support clone()", e);
+        }
+        return mac.doFinal(signingInput.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static byte[] encode(Claims c) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(VERSION);
+            out.writeLong(c.userId());
+            out.writeUTF(c.provider());
+            out.writeUTF(c.email());
+            out.writeUTF(c.providerUserId());
+            out.writeLong(c.expiresAt().getEpochSecond());
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Claims decode(byte[] payload) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+            if (in.readByte() != VERSION) {
+                throw new IOException("Unsupported token version");
+            }
+            return new Claims(in.readLong(), in.readUTF(), in.readUTF(), in.readUTF(),
+                    Instant.ofEpochSecond(in.readLong()));
+        }
+    }
+
+    private static Mac initMac(byte[] key) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(new SecretKeySpec(key, ALGORITHM));
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String kid(byte[] key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(key);
+            return B64.encodeToString(digest).substring(0, 8);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.lada.oauthlogin.security;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpSession;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseCookie;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.web.authentication.AuthenticationSuccessHandler;
+
+import java.io.IOException;
+
+/**
+ * After oauth2Login succeeds in stateless mode: issue the signed token cookie, drop the
+ * short-lived session that only carried the authorization request, and redirect.
+ */
+public class TokenIssuingSuccessHandler implements AuthenticationSuccessHandler {
+
+    private final SessionTokenService tokens;
+    private final String targetUrl;
+    private final boolean secureCookie;
+
+    public TokenIssuingSuccessHandler(SessionTokenService tokens, String targetUrl, boolean secureCookie) {
+        this.tokens = tokens;
+        this.targetUrl = targetUrl;
+        this.secureCookie = secureCookie;
+    }
+
+    @Override
+    public void onAuthenticationSuccess(HttpServletRequest request, HttpServletResponse response,
+                                        Authentication authentication) throws IOException {
+        AppUserPrincipal user = (AppUserPrincipal) authentication.getPrincipal();
+        String token = tokens.issue(user.getUserId(), user.getProvider(), user.getEmail(), user.getName());
+        ResponseCookie cookie = ResponseCookie.from(SessionTokenService.COOKIE_NAME, token)
+                .httpOnly(true)
+                .secure(secureCookie)
+                .sameSite("Lax")
+                .path("/")
+                .maxAge(tokens.ttl())
+                .build();
+        response.addHeader(HttpHeaders.SET_COOKIE, cookie.toString());
+
+        HttpSession session = request.getSession(false);
+        if (session != null) {
+            session.invalidate();
+        }
+        response.sendRedirect(targetUrl);
+    }
+}
@@ -0,0 +1,68 @@
+package com.lada.oauthlogin.service;
+
+import com.lada.oauthlogin.repository.AuthProviderRepository;
+import com.lada.oauthlogin.repository.LinkedProviderView;
+import com.lada.oauthlogin.repository.UserProfileView;
+import com.lada.oauthlogin.repository.UserRepository;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Admin export of users with their linked providers, one keyset page at a time.
+ * Each page costs exactly two queries (users, then all their providers), whatever its size.
+ */
+@Service
+public class AccountExportService {
+
+    public static final int MAX_PAGE_SIZE = 1000;
+
+    public record ExportedProvider(String provider, String providerUserId, String providerEmail) {}
+
+    public record ExportedUser(long id, String email, String displayName, String avatarUrl, String bio,
+                               ZonedDateTime updatedAt, List<ExportedProvider> providers) {}
+
+    // nextAfterId is null on the last page
+    public record ExportPage(List<ExportedUser> users, Long nextAfterId) {}
+
+    private final UserRepository userRepository;
+    private final AuthProviderRepository authProviderRepository;
+
+    public AccountExportService(UserRepository userRepository, AuthProviderRepository authProviderRepository) {
+        this.userRepository = userRepository;
+        this.authProviderRepository = authProviderRepository;
+    }
+
+    @Transactional(readOnly = true)
+    public ExportPage page(long afterId, int size) {
+        int limit = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        List<UserProfileView> users = userRepository.findProfilesAfter(afterId, Limit.of(limit));
+        if (users.isEmpty()) {
+            return new ExportPage(List.of(), null);
+        }
+
+        List<Long> ids = users.stream().map(UserProfileView::getId).toList();
+        Map<Long, List<ExportedProvider>> providers = new HashMap<>();
+        for (LinkedProviderView p : authProviderRepository.findLinkedByUserIdIn(ids)) {
+            providers.computeIfAbsent(p.getUserId(), id -> new ArrayList<>(2)).add(toExported(p));
+        }
+
+        List<ExportedUser> page = new ArrayList<>(users.size());
+        for (UserProfileView u : users) {
+            page.add(new ExportedUser(u.getId(), u.getEmail(), u.getDisplayName(), u.getAvatarUrl(), u.getBio(),
+                    u.getUpdatedAt(), providers.getOrDefault(u.getId(), List.of())));
+        }
+        Long next = users.size() == limit ? users.get(users.size() - 1).getId() : null;
+        return new ExportPage(page, next);
+    }
+
+    static ExportedProvider toExported(LinkedProviderView p) {
+        return new ExportedProvider(p.getProvider().name().toLowerCase(), p.getProviderUserId(), p.getProviderEmail());
+    }
+}
@@ -0,0 +1,327 @@
+package com.lada.oauthlogin.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lada.oauthlogin.cache.IdentityCache;
+import com.lada.oauthlogin.model.AuthProvider.Provider;
+import com.lada.oauthlogin.service.AccountExportService.ExportedProvider;
+import com.lada.oauthlogin.service.IdentityProvisioner.Dialect;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Bulk account transfer as NDJSON, one user with its providers per line. Export streams a forward-only
+ * cursor (server-side fetch on PostgreSQL and MySQL) and never holds more than one user in memory.
+ * Import commits chunks of {@code batch-size} lines as JDBC batches, without a persistence context.
+ *
+ * <p>Resuming: export from {@code afterId} = the last exported id; import with {@code skip} = the
+ * {@link ImportResult#checkpoint()} of the failed run (lines already committed).
+ */
+@Service
+public class AccountTransferService {
+
+    private static final Logger log = LoggerFactory.getLogger(AccountTransferService.class);
+
+    public record AccountRecord(Long id, String email, String displayName, String avatarUrl, String bio,
+                                OffsetDateTime createdAt, OffsetDateTime updatedAt, List<ExportedProvider> providers) {}
+
+    public record ExportResult(long users, Long lastId, double seconds, double usersPerSecond) {}
+
+    // checkpoint: physical lines fully committed, to pass as skip when resuming; error is null on success
+    public record ImportResult(long checkpoint, long usersCreated, long usersExisting, long providersLinked,
+                               long providersExisting, double seconds, double usersPerSecond, String error) {}
+
+    private record ChunkCounts(int usersCreated, int usersExisting, int providersLinked, int providersExisting) {}
+
+    private static final String EXPORT_SQL = """
+            SELECT u.id, u.email, u.display_name, u.avatar_url, u.bio, u.created_at, u.updated_at,
+                   a.provider, a.provider_user_id, a.provider_email
+            FROM users u LEFT JOIN auth_providers a ON a.user_id = u.id
+            WHERE u.id > ?
+            ORDER BY u.id, a.provider
+            """;
+
+    private static final String INSERT_USER =
+            "INSERT INTO users (email, display_name, avatar_url, bio, created_at, updated_at) VALUES (?, ?, ?, ?, ?, ?)";
+
+    private static final String INSERT_LINK =
+            "INSERT INTO auth_providers (user_id, provider, provider_user_id, provider_email) VALUES (?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbc;
+    private final TransactionTemplate chunkTransaction;
+    private final ObjectMapper objectMapper;
+    private final Dialect dialect;
+    private final int batchSize;
+    private final int fetchSize;
+    private final long progressEvery;
+
+    public AccountTransferService(JdbcTemplate jdbcTemplate, DataSource dataSource,
+                                  PlatformTransactionManager transactionManager, ObjectMapper objectMapper,
+                                  @Value("${app.transfer.batch-size:1000}") int batchSize,
+                                  @Value("${app.transfer.fetch-size:1000}") int fetchSize,
+                                  @Value("${app.transfer.progress-every:100000}") long progressEvery) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedJdbc = new NamedParameterJdbcTemplate(jdbcTemplate);
+        this.chunkTransaction = new TransactionTemplate(transactionManager);
+        this.objectMapper = objectMapper;
+        this.dialect = IdentityProvisioner.detectDialect(dataSource);
+        this.batchSize = batchSize;
+        this.fetchSize = fetchSize;
+        this.progressEvery = progressEvery;
+    }
+
+    // Read-only transaction: PostgreSQL only honours the fetch size (cursor) with auto-commit off
+    @Transactional(readOnly = true)
+    public ExportResult export(long afterId, OutputStream out) {
+        ExportWriter writer = new ExportWriter(out);
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(EXPORT_SQL, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            // Connector/J streams row by row only with this sentinel fetch size
+            ps.setFetchSize(dialect == Dialect.MYSQL ? Integer.MIN_VALUE : fetchSize);
+            ps.setLong(1, afterId);
+            return ps;
+        }, writer);
+        writer.finish();
+
+        ExportResult result = new ExportResult(writer.users, writer.lastId, seconds(writer.start), rate(writer.users, writer.start));
+        log.info("Exported {} users after id {} in {}s ({}/s), last id {}",
+                result.users(), afterId, round(result.seconds()), Math.round(result.usersPerSecond()), result.lastId());
+        return result;
+    }
+
+    public ImportResult importAccounts(InputStream in, long skip) {
+        long start = System.nanoTime();
+        long line = 0;
+        long checkpoint = skip;
+        long[] totals = new long[4];
+        List<AccountRecord> chunk = new ArrayList<>(batchSize);
+        String error = null;
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 1 << 16)) {
+            String text;
+            while ((text = reader.readLine()) != null) {
+                line++;
+                if (line <= skip || text.isBlank()) {
+                    continue;
+                }
+                chunk.add(objectMapper.readValue(text, AccountRecord.class));
+                if (chunk.size() == batchSize) {
+                    commit(chunk, totals);
+                    checkpoint = line;
+                    if ((checkpoint - skip) % progressEvery < batchSize) {
+                        log.info("Import at line {}: {} users created ({}/s)", checkpoint, totals[0], Math.round(rate(totals[0], start)));
+                    }
+                }
+            }
+            if (!chunk.isEmpty()) {
+                commit(chunk, totals);
+            }
+            checkpoint = line;
+        } catch (IOException | RuntimeException e) {
+            log.warn("Import stopped near line {}; resume with skip={}", line, checkpoint, e);
+            error = e.getMessage();
+        }
+
+        ImportResult result = new ImportResult(checkpoint, totals[0], totals[1], totals[2], totals[3],
+                seconds(start), rate(totals[0] + totals[1], start), error);
+        log.info("Import finished: {}", result);
+        return result;
+    }
+
+    private void commit(List<AccountRecord> chunk, long[] totals) {
+        ChunkCounts counts = chunkTransaction.execute(status -> writeChunk(chunk));
+        totals[0] += counts.usersCreated();
+        totals[1] += counts.usersExisting();
+        totals[2] += counts.providersLinked();
+        totals[3] += counts.providersExisting();
+        chunk.clear();
+    }
+
+    // Users first (existing emails are kept, not overwritten), then one id lookup, then the provider links.
+    // A later record for an email already in the chunk is treated like one for an existing user: its profile
+    // fields are not applied, its providers are linked to the first record's user
+    private ChunkCounts writeChunk(List<AccountRecord> chunk) {
+        Map<String, AccountRecord> byEmail = new LinkedHashMap<>();
+        Map<String, List<ExportedProvider>> providersByEmail = new HashMap<>();
+        int duplicates = 0;
+        for (AccountRecord r : chunk) {
+            String email = IdentityCache.normalizeEmail(r.email());
+            if (byEmail.putIfAbsent(email, r) != null) {
+                duplicates++;
+            }
+            if (r.providers() != null) {
+                providersByEmail.computeIfAbsent(email, e -> new ArrayList<>()).addAll(r.providers());
+            }
+        }
+
+        Map<String, Long> ids = userIds(byEmail.keySet());
+        int existingUsers = ids.size() + duplicates;
+        List<Map.Entry<String, AccountRecord>> missing = byEmail.entrySet().stream()
+                .filter(e -> !ids.containsKey(e.getKey()))
+                .toList();
+        if (!missing.isEmpty()) {
+            OffsetDateTime now = OffsetDateTime.now(ZoneOffset.UTC);
+            jdbcTemplate.batchUpdate(INSERT_USER, missing, missing.size(), (ps, e) -> {
+                AccountRecord r = e.getValue();
+                ps.setString(1, e.getKey());
+                ps.setString(2, r.displayName());
+                ps.setString(3, r.avatarUrl());
+                ps.setString(4, r.bio() == null ? "" : r.bio());
+                ps.setObject(5, r.createdAt() != null ? r.createdAt() : now);
+                ps.setObject(6, r.updatedAt() != null ? r.updatedAt() : now);
+            });
+            ids.putAll(userIds(missing.stream().map(Map.Entry::getKey).toList()));
+        }
+
+        record Link(long userId, Provider provider, String providerUserId, String providerEmail) {}
+        List<Link> links = new ArrayList<>();
+        for (Map.Entry<String, List<ExportedProvider>> e : providersByEmail.entrySet()) {
+            for (ExportedProvider p : e.getValue()) {
+                links.add(new Link(ids.get(e.getKey()), Provider.valueOf(p.provider().toUpperCase()),
+                        p.providerUserId(), p.providerEmail()));
+            }
+        }
+
+        Set<String> linked = existingLinks(links.stream().map(Link::providerUserId).toList());
+        Set<String> seen = new HashSet<>();
+        List<Link> newLinks = links.stream()
+                .filter(l -> !linked.contains(linkKey(l.provider(), l.providerUserId())))
+                .filter(l -> seen.add(linkKey(l.provider(), l.providerUserId())))
+                .toList();
+        if (!newLinks.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_LINK, newLinks, newLinks.size(), (ps, l) -> {
+                ps.setLong(1, l.userId());
+                ps.setShort(2, l.provider().code());
+                ps.setString(3, l.providerUserId());
+                ps.setString(4, l.providerEmail());
+            });
+        }
+        return new ChunkCounts(missing.size(), existingUsers, newLinks.size(), links.size() - newLinks.size());
+    }
+
+    private Map<String, Long> userIds(Collection<String> emails) {
+        Map<String, Long> ids = new HashMap<>();
+        if (emails.isEmpty()) {
+            return ids;
+        }
+        namedJdbc.query("SELECT id, email FROM users WHERE email IN (:emails)", Map.of("emails", emails),
+                (RowCallbackHandler) rs -> ids.put(rs.getString("email"), rs.getLong("id")));
+        return ids;
+    }
+
+    private Set<String> existingLinks(List<String> providerUserIds) {
+        Set<String> keys = new HashSet<>();
+        if (providerUserIds.isEmpty()) {
+            return keys;
+        }
+        namedJdbc.query("SELECT provider, provider_user_id FROM auth_providers WHERE provider_user_id IN (:ids)",
+                Map.of("ids", providerUserIds),
+                (RowCallbackHandler) rs -> keys.add(linkKey(Provider.fromCode(rs.getShort("provider")), rs.getString("provider_user_id"))));
+        return keys;
+    }
+
+    private static String linkKey(Provider provider, String providerUserId) {
+        return provider.code() + ":" + providerUserId;
+    }
+
+    private static double seconds(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1e9;
+    }
+
+    private static double rate(long count, long startNanos) {
+        double s = seconds(startNanos);
+        return s > 0 ? count / s : 0;
+    }
+
+    private static double round(double seconds) {
+        return Math.round(seconds * 10) / 10.0;
+    }
+
+    // Rows arrive ordered by user id; a user's record is written when the next user's first row arrives
+    private final class ExportWriter implements RowCallbackHandler {
+
+        private final OutputStream out;
+        private final long start = System.nanoTime();
+        private AccountRecord current;
+        private long users;
+        private Long lastId;
+
+        ExportWriter(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void processRow(ResultSet rs) throws SQLException {
+            long id = rs.getLong("id");
+            if (current == null || current.id() != id) {
+                write();
+                current = new AccountRecord(id, rs.getString("email"), rs.getString("display_name"),
+                        rs.getString("avatar_url"), rs.getString("bio"),
+                        rs.getObject("created_at", OffsetDateTime.class), rs.getObject("updated_at", OffsetDateTime.class),
+                        new ArrayList<>(2));
+            }
+            short code = rs.getShort("provider");
+            if (!rs.wasNull()) {
+                current.providers().add(new ExportedProvider(Provider.fromCode(code).name().toLowerCase(),
+                        rs.getString("provider_user_id"), rs.getString("provider_email")));
+            }
+        }
+
+        void finish() {
+            write();
+            try {
+                out.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void write() {
+            if (current == null) {
+                return;
+            }
+            try {
+                out.write(objectMapper.writeValueAsBytes(current));
+                out.write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            users++;
+            lastId = current.id();
+            if (users % progressEvery == 0) {
+                log.info("Export at user {} (id {}), {}/s", users, lastId, Math.round(rate(users, start)));
+            }
+            current = null;
+        }
+    }
+}
@@ -1,52 +1,97 @@
 package com.lada.oauthlogin.service;
 
+import com.lada.oauthlogin.cache.AvatarCache;
+import com.lada.oauthlogin.cache.IdentityCache;
+import com.lada.oauthlogin.cache.IdentityCache.CachedUser;
+import com.lada.oauthlogin.cache.IdentityCache.ProviderLink;
+import com.lada.oauthlogin.datasource.ReadYourWrites;
+import com.lada.oauthlogin.http.ProviderHttpClients;
+import com.lada.oauthlogin.metrics.LoginMetrics;
 import com.lada.oauthlogin.model.AuthProvider;
-import com.lada.oauthlogin.model.User;
-import com.lada.oauthlogin.repository.AuthProviderRepository;
-import com.lada.oauthlogin.repository.UserRepository;
+import com.lada.oauthlogin.security.AppUserPrincipal;
+import com.lada.oauthlogin.service.IdentityProvisioner.ProvisionResult;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.oauth2.client.userinfo.DefaultOAuth2UserService;
 import org.springframework.security.oauth2.client.userinfo.OAuth2UserRequest;
+import org.springframework.security.oauth2.client.http.OAuth2ErrorResponseErrorHandler;
 import org.springframework.security.oauth2.core.OAuth2AuthenticationException;
-import org.springframework.security.oauth2.core.user.DefaultOAuth2User;
 import org.springframework.security.oauth2.core.user.OAuth2User;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.client.RestTemplate;
 
-import java.time.ZoneId;
-import java.time.ZonedDateTime;
 import java.util.*;
+import java.util.function.Supplier;
 
 @Service
 public class CustomOAuth2UserService extends DefaultOAuth2UserService {
 
     private static final Logger log = LoggerFactory.getLogger(CustomOAuth2UserService.class);
 
-    private final UserRepository userRepository;
-    private final AuthProviderRepository authProviderRepository;
-
-    public CustomOAuth2UserService(UserRepository userRepository,
-                                   AuthProviderRepository authProviderRepository) {
-        this.userRepository = userRepository;
-        this.authProviderRepository = authProviderRepository;
+    private final IdentityProvisioner identityProvisioner;
+    private final IdentityCache identityCache;
+    private final LoginMetrics loginMetrics;
+    private final AvatarCache avatarCache;
+    private final ReadYourWrites readYourWrites;
+
+    public CustomOAuth2UserService(IdentityProvisioner identityProvisioner,
+                                   IdentityCache identityCache,
+                                   LoginMetrics loginMetrics,
+                                   ProviderHttpClients providerHttpClients,
+                                   AvatarCache avatarCache,
+                                   ReadYourWrites readYourWrites) {
+        this.identityProvisioner = identityProvisioner;
+        this.identityCache = identityCache;
+        this.loginMetrics = loginMetrics;
+        this.avatarCache = avatarCache;
+        this.readYourWrites = readYourWrites;
+
+        // Same setup as the DefaultOAuth2UserService default, on the per-provider clients
+        RestTemplate restTemplate = new RestTemplate(providerHttpClients.requestFactory());
+        restTemplate.setErrorHandler(new OAuth2ErrorResponseErrorHandler());
+        restTemplate.getInterceptors().add(providerHttpClients.guard());
+        setRestOperations(restTemplate);
     }
 
+    // Not @Transactional: the remote user-info call must not hold a DB connection (or pin a carrier thread
+    // under virtual threads). The DB work runs in IdentityProvisioner's own short transaction.
     @Override
-    @Transactional
-    public OAuth2User loadUser(OAuth2UserRequest userRequest) throws OAuth2AuthenticationException {
-        OAuth2User delegate = super.loadUser(userRequest);
-        Map<String, Object> attrs = new HashMap<>(delegate.getAttributes());
+    public AppUserPrincipal loadUser(OAuth2UserRequest userRequest) throws OAuth2AuthenticationException {
+        String regId = userRequest.getClientRegistration().getRegistrationId(); // "google" or "github"
+        return timed(regId, () -> {
+            OAuth2User delegate = loginMetrics.stage("userinfo_fetch", regId, () -> super.loadUser(userRequest));
+            return provision(userRequest, regId, delegate.getAttributes());
+        });
+    }
 
-        log.warn(">>> CustomOAuth2UserService.loadUser() called for provider: {}", userRequest.getClientRegistration().getRegistrationId());
+    /**
+     * Same as {@link #loadUser(OAuth2UserRequest)} but from attributes the caller already holds and trusts
+     * (verified ID token claims), so no user-info request is made.
+     */
+    public AppUserPrincipal loadUserFromAttributes(OAuth2UserRequest userRequest, Map<String, Object> attrs) {
+        String regId = userRequest.getClientRegistration().getRegistrationId();
+        return timed(regId, () -> provision(userRequest, regId, attrs));
+    }
 
-        String regId = userRequest.getClientRegistration().getRegistrationId(); // "google" or "github"
+    private AppUserPrincipal timed(String regId, Supplier<AppUserPrincipal> login) {
+        Timer.Sample sample = loginMetrics.start();
+        String outcome = "error";
+        try {
+            AppUserPrincipal principal = login.get();
+            outcome = "success";
+            return principal;
+        } finally {
+            loginMetrics.login(sample, regId, outcome);
+        }
+    }
+
+    private AppUserPrincipal provision(OAuth2UserRequest userRequest, String regId, Map<String, Object> attrs) {
+        log.debug("CustomOAuth2UserService.loadUser() called for provider: {}", regId);
 
         String idAttr = userRequest.getClientRegistration()
             .getProviderDetails().getUserInfoEndpoint().getUserNameAttributeName();
         log.debug("UserNameAttributeName resolved: {}", idAttr);
-        log.debug("Attributes: {}", attrs);  // NEW LINE
 
         String providerUserId = str(attrs.get(idAttr));
         log.debug("providerUserId resolved: {}", providerUserId);
@@ -81,26 +126,8 @@ public class CustomOAuth2UserService extends DefaultOAuth2UserService {
             throw new OAuth2AuthenticationException("Login identifier not available from " + regId);
         }
 
-        email = email.toLowerCase();
-        ZonedDateTime now = ZonedDateTime.now(ZoneId.of("Asia/Manila"));
-
-        // 1. Load or create user by this "email" or GitHub username
-        User user = userRepository.findByEmail(email).orElse(null);
-        boolean isNewUser = false;
-
-        if (user == null) {
-            log.info("Creating new user: {}", email);
-            user = new User();
-            user.setEmail(email);
-            user.setDisplayName(displayName);
-            user.setAvatarUrl(avatarUrl);
-            user.setCreatedAt(now);
-            user.setUpdatedAt(now);
-            user = userRepository.saveAndFlush(user);
-            isNewUser = true;
-        }
+        email = IdentityCache.normalizeEmail(email);
 
-        // 2. Link provider if not already linked
         AuthProvider.Provider providerEnum;
         try {
             providerEnum = AuthProvider.Provider.valueOf(regId.toUpperCase());
@@ -108,62 +135,60 @@ public class CustomOAuth2UserService extends DefaultOAuth2UserService {
             throw new OAuth2AuthenticationException("Unknown provider: " + regId);
         }
 
-        AuthProvider existing = authProviderRepository
-                .findByProviderAndProviderUserId(providerEnum, providerUserId)
-                .orElse(null);
-
-
-        log.warn("existing is null? {}", existing == null);
-        if (existing != null) {
-            log.warn("Found existing AuthProvider match: provider={}, userId={}, email={}",
-                existing.getProvider(), existing.getProviderUserId(), existing.getProviderEmail());
+        // 0. Returning user with an already-linked provider and nothing to backfill: no DB work needed.
+        // The stage times only this per-node cache probe; a miss is resolved by the provision stage's upsert
+        Timer.Sample lookup = loginMetrics.start();
+        ProviderLink cachedLink = identityCache.getLink(providerEnum, providerUserId);
+        CachedUser cachedUser = cachedLink != null ? identityCache.getUser(email) : null;
+        boolean cacheHit = cachedUser != null
+                && !needsBackfill(cachedUser.displayName(), cachedUser.avatarUrl(), displayName, avatarUrl);
+        loginMetrics.stage(lookup, "identity_cache", regId, cacheHit ? "hit" : "miss");
+        if (cacheHit) {
+            avatarCache.refreshIfChanged(cachedUser.id(), cachedUser.avatarUrl());
+            return principal(attrs, cachedUser.id(), regId, email, displayName, avatarUrl, providerUserId);
         }
 
-        if (existing == null) {
-            log.info("Linking provider {} to user {}", regId, email);
-            AuthProvider ap = new AuthProvider();
-            ap.setProvider(providerEnum);
-            ap.setProviderUserId(providerUserId);
-            ap.setProviderEmail(email);
-            ap.setUser(user);
-            authProviderRepository.saveAndFlush(ap);
-
-            log.info("Successfully saved AuthProvider!");
-            authProviderRepository.findAll().forEach(p ->
-                log.info("AuthProvider: id={}, provider={}, providerUserId={}, email={}, userId={}",
-                    p.getId(), p.getProvider(), p.getProviderUserId(), p.getProviderEmail(), p.getUser().getId())
-                    );
+        // 1-3. Create or backfill the user and link the provider in a single upsert transaction
+        Timer.Sample provision = loginMetrics.start();
+        ProvisionResult result;
+        try {
+            result = identityProvisioner.provision(providerEnum, providerUserId, email, displayName, avatarUrl);
+        } catch (RuntimeException e) {
+            loginMetrics.stage(provision, "provision", regId, "error");
+            throw e;
         }
+        loginMetrics.stage(provision, "provision", regId,
+                result.userCreated() ? "user_created" : result.providerLinked() ? "provider_linked" : "existing");
 
-        
-
-        // 3. Update missing fields if needed
-        boolean dirty = false;
+        // The first requests after login may reach a replica that has not seen this upsert yet
+        readYourWrites.wrote(result.userId());
+        // Audit log lines, identity events and new-avatar fetches come from the outbox (OutboxDispatcher)
 
-        if ((user.getDisplayName() == null || user.getDisplayName().isBlank()) && displayName != null) {
-            user.setDisplayName(displayName);
-            dirty = true;
+        if (result.user() != null) {
+            identityCache.putUser(result.user());
+        } else {
+            identityCache.evictUser(email);
         }
-
-        if ((user.getAvatarUrl() == null || user.getAvatarUrl().isBlank()) && avatarUrl != null) {
-            user.setAvatarUrl(avatarUrl);
-            dirty = true;
+        identityCache.putLink(providerEnum, providerUserId, result.userId(), email);
+        // Thumbnail of the stored avatar (the first provider's), not of whichever provider this login used.
+        // New and backfilled avatars are already queued in the outbox; this covers a thumbnail missing on this node.
+        if (!result.userCreated() && !result.profileBackfilled()) {
+            avatarCache.refreshIfChanged(result.userId(), result.user() != null ? result.user().avatarUrl() : avatarUrl);
         }
 
-        if (dirty && !isNewUser) {
-            user.setUpdatedAt(now);
-            userRepository.saveAndFlush(user);
-        }
+        return principal(attrs, result.userId(), regId, email, displayName, avatarUrl, providerUserId);
+    }
 
-        // 4. Add "email" and "provider" to attributes for frontend access
-        attrs.put("email", email);
-        attrs.put("provider", regId);
+    // 4. Compact session principal; the provider's attribute map is only kept for this request
+    private static AppUserPrincipal principal(Map<String, Object> attrs, Long userId, String regId, String email,
+                                              String displayName, String avatarUrl, String providerUserId) {
+        return new AppUserPrincipal(userId, regId, email, displayName, avatarUrl, providerUserId,
+                AppUserPrincipal.USER_AUTHORITIES, attrs);
+    }
 
-        return new DefaultOAuth2User(
-                List.of(new SimpleGrantedAuthority("ROLE_USER")),
-                attrs,
-                idAttr
-        );
+    private static boolean needsBackfill(String currentName, String currentAvatar, String displayName, String avatarUrl) {
+        return ((currentName == null || currentName.isBlank()) && displayName != null)
+                || ((currentAvatar == null || currentAvatar.isBlank()) && avatarUrl != null);
     }
 
     private static String str(Object o) {
@@ -1,39 +1,96 @@
 package com.lada.oauthlogin.service;
 
-import org.springframework.security.core.GrantedAuthority;
-import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import com.lada.oauthlogin.model.AuthProvider.Provider;
+import com.lada.oauthlogin.security.AppOidcUserPrincipal;
+import com.lada.oauthlogin.security.AppUserPrincipal;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.security.oauth2.client.oidc.userinfo.OidcUserRequest;
 import org.springframework.security.oauth2.client.oidc.userinfo.OidcUserService;
-import org.springframework.security.oauth2.core.oidc.user.DefaultOidcUser;
+import org.springframework.security.oauth2.core.oidc.OidcIdToken;
 import org.springframework.security.oauth2.core.oidc.user.OidcUser;
-import org.springframework.security.oauth2.core.user.OAuth2User;
-import org.springframework.security.oauth2.core.oidc.OidcUserInfo;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
 import java.util.List;
+import java.util.Locale;
 
 @Service
 public class DelegatingOidcUserService extends OidcUserService {
 
+    private static final String FETCHED_AT =
+            "SELECT userinfo_fetched_at FROM auth_providers WHERE provider = ? AND provider_user_id = ?";
+    private static final String MARK_FETCHED =
+            "UPDATE auth_providers SET userinfo_fetched_at = ? WHERE provider = ? AND provider_user_id = ?";
+
     private final CustomOAuth2UserService customOAuth2UserService;
+    private final JdbcTemplate jdbcTemplate;
+
+    // "always": every OIDC login calls the provider's user-info endpoint.
+    // "when-needed": the verified ID token claims are used unless a required claim is missing or the identity's
+    // user-info was last fetched more than max-age ago. The fetch time is stored on the auth_providers row, so
+    // every node makes the same decision for the same login.
+    private final boolean idTokenFirst;
+    private final List<String> requiredClaims;
+    private final Duration maxAge;
 
-    public DelegatingOidcUserService(CustomOAuth2UserService customOAuth2UserService) {
+    public DelegatingOidcUserService(CustomOAuth2UserService customOAuth2UserService, JdbcTemplate jdbcTemplate,
+                                     @Value("${app.oidc.userinfo.mode:always}") String mode,
+                                     @Value("${app.oidc.userinfo.required-claims:sub,email,name,picture}") List<String> requiredClaims,
+                                     @Value("${app.oidc.userinfo.max-age:24h}") Duration maxAge) {
         this.customOAuth2UserService = customOAuth2UserService;
+        this.jdbcTemplate = jdbcTemplate;
+        this.idTokenFirst = "when-needed".equalsIgnoreCase(mode);
+        this.requiredClaims = List.copyOf(requiredClaims);
+        this.maxAge = maxAge;
     }
 
     @Override
     public OidcUser loadUser(OidcUserRequest userRequest) {
-        OAuth2User oauthUser = customOAuth2UserService.loadUser(userRequest);
-
-        List<GrantedAuthority> authorities = List.of(new SimpleGrantedAuthority("ROLE_USER"));
-        String nameAttrKey = userRequest.getClientRegistration()
-                .getProviderDetails().getUserInfoEndpoint().getUserNameAttributeName();
-
-        return new DefaultOidcUser(
-                authorities,
-                userRequest.getIdToken(),
-                new OidcUserInfo(oauthUser.getAttributes()),
-                nameAttrKey
-        );
+        OidcIdToken idToken = userRequest.getIdToken();
+        Provider provider = provider(userRequest);
+        AppUserPrincipal user;
+        if (idTokenFirst && hasRequiredClaims(idToken) && fetchedRecently(provider, idToken.getSubject())) {
+            user = customOAuth2UserService.loadUserFromAttributes(userRequest, idToken.getClaims());
+        } else {
+            user = customOAuth2UserService.loadUser(userRequest);
+            if (idTokenFirst && provider != null) {
+                // The identity is linked by now (loadUser provisions it); the principal name is the provider user id
+                jdbcTemplate.update(MARK_FETCHED, OffsetDateTime.now(ZoneOffset.UTC), provider.code(),
+                        user.getName());
+            }
+        }
+        return new AppOidcUserPrincipal(user, idToken);
+    }
+
+    // A never-fetched or unknown identity counts as stale
+    private boolean fetchedRecently(Provider provider, String subject) {
+        if (provider == null || subject == null) {
+            return false;
+        }
+        List<OffsetDateTime> fetched = jdbcTemplate.query(FETCHED_AT,
+                (rs, i) -> rs.getObject(1, OffsetDateTime.class), provider.code(), subject);
+        OffsetDateTime at = fetched.isEmpty() ? null : fetched.get(0);
+        return at != null && at.isAfter(OffsetDateTime.now(ZoneOffset.UTC).minus(maxAge));
+    }
+
+    private static Provider provider(OidcUserRequest userRequest) {
+        try {
+            return Provider.valueOf(userRequest.getClientRegistration().getRegistrationId().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private boolean hasRequiredClaims(OidcIdToken idToken) {
+        for (String claim : requiredClaims) {
+            String value = idToken.getClaimAsString(claim);
+            if (value == null || value.isBlank()) {
+                return false;
+            }
+        }
+        return true;
     }
 }
@@ -0,0 +1,36 @@
+package com.lada.oauthlogin.service;
+
+import com.lada.oauthlogin.model.AuthProvider.Provider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.lada.oauthlogin.support.TransactionHooks.afterCommit;
+
+/**
+ * Structured "identity linked" events, written to the {@code identity.events} logger (async appender in
+ * logback-spring.xml) for ops to tail or ship. Each event carries a per-node sequence number.
+ */
+@Component
+public class IdentityEventLog {
+
+    private static final Logger events = LoggerFactory.getLogger("identity.events");
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    public void linked(Provider provider, String providerUserId, Long userId, String email, boolean newUser) {
+        afterCommit(() -> append(provider, providerUserId, userId, email, newUser));
+    }
+
+    private void append(Provider provider, String providerUserId, Long userId, String email, boolean newUser) {
+        long seq = sequence.incrementAndGet();
+        events.info("event=identity_linked seq={} provider={} providerUserId={} userId={} email={} newUser={}",
+                seq, provider, providerUserId, userId, email, newUser);
+    }
+
+    public long lastSequence() {
+        return sequence.get();
+    }
+}
@@ -0,0 +1,290 @@
+package com.lada.oauthlogin.service;
+
+import com.lada.oauthlogin.cache.IdentityCache.CachedUser;
+import com.lada.oauthlogin.model.AuthProvider.Provider;
+import com.lada.oauthlogin.outbox.Outbox;
+import com.lada.oauthlogin.outbox.OutboxEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.jdbc.support.MetaDataAccessException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.sql.DataSource;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Creates or backfills the user row and links the provider identity in one transaction.
+ * PostgreSQL and MySQL use native upserts (two statements, no read-before-write; MySQL also reads
+ * LAST_INSERT_ID() when an existing user had nothing to backfill);
+ * other databases (H2) use a portable read/insert path that tolerates duplicate-key races.
+ * The MySQL upserts need {@code useAffectedRows=true} on the JDBC URL; without it an unchanged duplicate
+ * is reported like an insert, so MySQL falls back to the portable path.
+ * Each change is also appended to the outbox in the same transaction for post-login side effects.
+ */
+@Component
+public class IdentityProvisioner {
+
+    private static final Logger log = LoggerFactory.getLogger(IdentityProvisioner.class);
+
+    public record ProvisionResult(Long userId, boolean userCreated, boolean providerLinked,
+                                  boolean profileBackfilled, CachedUser user) {}
+
+    enum Dialect { POSTGRESQL, MYSQL, PORTABLE }
+
+    // Only touch updated_at when a blank display name / avatar is actually being backfilled. The CTE reads the
+    // row as it was before the statement, so the backfill is decided on the previous values, not on a timestamp
+    private static final String PG_UPSERT_USER = """
+            WITH previous AS (SELECT display_name, avatar_url FROM users WHERE email = ?)
+            INSERT INTO users (email, display_name, avatar_url, bio, created_at, updated_at)
+            VALUES (?, ?, ?, '', ?, ?)
+            ON CONFLICT (email) DO UPDATE SET
+                updated_at = CASE
+                    WHEN (NULLIF(TRIM(users.display_name), '') IS NULL AND EXCLUDED.display_name IS NOT NULL)
+                      OR (NULLIF(TRIM(users.avatar_url), '') IS NULL AND EXCLUDED.avatar_url IS NOT NULL)
+                    THEN EXCLUDED.updated_at ELSE users.updated_at END,
+                display_name = CASE WHEN NULLIF(TRIM(users.display_name), '') IS NULL AND EXCLUDED.display_name IS NOT NULL
+                    THEN EXCLUDED.display_name ELSE users.display_name END,
+                avatar_url = CASE WHEN NULLIF(TRIM(users.avatar_url), '') IS NULL AND EXCLUDED.avatar_url IS NOT NULL
+                    THEN EXCLUDED.avatar_url ELSE users.avatar_url END
+            RETURNING id, (xmax = 0) AS created, email, display_name, avatar_url, bio, updated_at,
+                EXISTS (SELECT 1 FROM previous) AS existed,
+                (SELECT display_name FROM previous) AS previous_display_name,
+                (SELECT avatar_url FROM previous) AS previous_avatar_url
+            """;
+
+    private static final String PG_LINK = """
+            INSERT INTO auth_providers (provider, provider_user_id, provider_email, user_id)
+            VALUES (?, ?, ?, ?)
+            ON CONFLICT (provider, provider_user_id) DO NOTHING
+            """;
+
+    // Run with useAffectedRows=true: 1 = inserted, 2 = existing row backfilled, 0 = existing row unchanged.
+    // MySQL applies assignments left to right, so updated_at must be computed before the columns it inspects
+    private static final String MYSQL_UPSERT_USER = """
+            INSERT INTO users (email, display_name, avatar_url, bio, created_at, updated_at)
+            VALUES (?, ?, ?, '', ?, ?)
+            ON DUPLICATE KEY UPDATE
+                id = LAST_INSERT_ID(id),
+                updated_at = IF((NULLIF(TRIM(display_name), '') IS NULL AND VALUES(display_name) IS NOT NULL)
+                                 OR (NULLIF(TRIM(avatar_url), '') IS NULL AND VALUES(avatar_url) IS NOT NULL),
+                                VALUES(updated_at), updated_at),
+                display_name = IF(NULLIF(TRIM(display_name), '') IS NULL AND VALUES(display_name) IS NOT NULL,
+                                  VALUES(display_name), display_name),
+                avatar_url = IF(NULLIF(TRIM(avatar_url), '') IS NULL AND VALUES(avatar_url) IS NOT NULL,
+                                VALUES(avatar_url), avatar_url)
+            """;
+
+    // 0 for an existing identity under useAffectedRows=true
+    private static final String MYSQL_LINK = """
+            INSERT INTO auth_providers (provider, provider_user_id, provider_email, user_id)
+            VALUES (?, ?, ?, ?)
+            ON DUPLICATE KEY UPDATE id = id
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Outbox outbox;
+    private final Dialect dialect;
+
+    public IdentityProvisioner(JdbcTemplate jdbcTemplate, DataSource dataSource, Outbox outbox) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.outbox = outbox;
+        Dialect detected = detectDialect(dataSource);
+        if (detected == Dialect.MYSQL && !reportsAffectedRows(dataSource)) {
+            log.warn("MySQL JDBC URL lacks useAffectedRows=true; identity provisioning uses the portable path");
+            detected = Dialect.PORTABLE;
+        }
+        this.dialect = detected;
+        log.info("Identity provisioning uses {} upserts", dialect);
+    }
+
+    @Transactional
+    public ProvisionResult provision(Provider provider, String providerUserId, String email,
+                                     String displayName, String avatarUrl) {
+        // Column precision, so the returned snapshot's updatedAt matches what a later read returns
+        OffsetDateTime now = OffsetDateTime.now(ZoneOffset.UTC).truncatedTo(ChronoUnit.MICROS);
+        ProvisionResult result = switch (dialect) {
+            case POSTGRESQL -> provisionPostgres(provider, providerUserId, email, displayName, avatarUrl, now);
+            case MYSQL -> provisionMysql(provider, providerUserId, email, displayName, avatarUrl, now);
+            case PORTABLE -> provisionPortable(provider, providerUserId, email, displayName, avatarUrl, now);
+        };
+
+        long userId = result.userId();
+        if (result.userCreated()) {
+            outbox.append(OutboxEvent.Type.USER_CREATED, userId, Outbox.payload(
+                    "email", email, "provider", provider.name().toLowerCase(), "avatarUrl", avatarUrl));
+        }
+        if (result.providerLinked()) {
+            outbox.append(OutboxEvent.Type.PROVIDER_LINKED, userId, Outbox.payload(
+                    "provider", provider.name().toLowerCase(), "providerUserId", providerUserId,
+                    "email", email, "newUser", result.userCreated()));
+        }
+        if (result.profileBackfilled()) {
+            outbox.append(OutboxEvent.Type.PROFILE_BACKFILLED, userId, Outbox.payload(
+                    "provider", provider.name().toLowerCase()));
+        }
+        return result;
+    }
+
+    private ProvisionResult provisionPostgres(Provider provider, String providerUserId, String email,
+                                              String displayName, String avatarUrl, OffsetDateTime now) {
+        record Upserted(CachedUser user, boolean created, boolean backfilled) {}
+        Upserted upserted = jdbcTemplate.queryForObject(PG_UPSERT_USER, (rs, i) -> {
+            boolean created = rs.getBoolean("created");
+            // A conflict with a row inserted concurrently (not in the CTE's snapshot) counts as no backfill
+            boolean backfilled = !created && rs.getBoolean("existed")
+                    && backfills(rs.getString("previous_display_name"), rs.getString("previous_avatar_url"),
+                            displayName, avatarUrl);
+            return new Upserted(
+                    new CachedUser(rs.getLong("id"), rs.getString("email"), rs.getString("display_name"),
+                            rs.getString("avatar_url"), rs.getString("bio"),
+                            toZoned(rs.getObject("updated_at", OffsetDateTime.class))),
+                    created, backfilled);
+        }, email, email, displayName, avatarUrl, now, now);
+
+        Long userId = upserted.user().id();
+        boolean linked = jdbcTemplate.update(PG_LINK, provider.code(), providerUserId, email, userId) == 1;
+        return new ProvisionResult(userId, upserted.created(), linked, upserted.backfilled(), upserted.user());
+    }
+
+    private ProvisionResult provisionMysql(Provider provider, String providerUserId, String email,
+                                           String displayName, String avatarUrl, OffsetDateTime now) {
+        GeneratedKeyHolder keys = new GeneratedKeyHolder();
+        int affected = jdbcTemplate.update(con -> {
+            PreparedStatement ps = con.prepareStatement(MYSQL_UPSERT_USER, Statement.RETURN_GENERATED_KEYS);
+            ps.setString(1, email);
+            ps.setString(2, displayName);
+            ps.setString(3, avatarUrl);
+            ps.setObject(4, now);
+            ps.setObject(5, now);
+            return ps;
+        }, keys);
+
+        // Connector/J reports one generated key per affected row, so two for a backfill (the first is
+        // LAST_INSERT_ID(id)) and none for an unchanged row, whose id is still in LAST_INSERT_ID()
+        Long userId = keys.getKeyList().isEmpty()
+                ? jdbcTemplate.queryForObject("SELECT LAST_INSERT_ID()", Long.class)
+                : ((Number) keys.getKeyList().get(0).values().iterator().next()).longValue();
+        boolean created = affected == 1;
+        boolean backfilled = affected == 2;
+        boolean linked = jdbcTemplate.update(MYSQL_LINK, provider.code(), providerUserId, email, userId) == 1;
+        return new ProvisionResult(userId, created, linked, backfilled, null);
+    }
+
+    private ProvisionResult provisionPortable(Provider provider, String providerUserId, String email,
+                                              String displayName, String avatarUrl, OffsetDateTime now) {
+        boolean created = false;
+        Matched matched = backfillExisting(email, displayName, avatarUrl, now);
+        Long userId = matched == null ? null : matched.id();
+        if (userId == null) {
+            try {
+                GeneratedKeyHolder keys = new GeneratedKeyHolder();
+                jdbcTemplate.update(con -> {
+                    PreparedStatement ps = con.prepareStatement(
+                            "INSERT INTO users (email, display_name, avatar_url, bio, created_at, updated_at) VALUES (?, ?, ?, '', ?, ?)",
+                            new String[] {"id"});
+                    ps.setString(1, email);
+                    ps.setString(2, displayName);
+                    ps.setString(3, avatarUrl);
+                    ps.setObject(4, now);
+                    ps.setObject(5, now);
+                    return ps;
+                }, keys);
+                userId = keys.getKeyAs(Long.class);
+                created = true;
+            } catch (DuplicateKeyException race) {
+                // Another login for the same email inserted first
+                matched = backfillExisting(email, displayName, avatarUrl, now);
+                userId = matched.id();
+            }
+        }
+
+        boolean linked = false;
+        Integer existing = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM auth_providers WHERE provider = ? AND provider_user_id = ?",
+                Integer.class, provider.code(), providerUserId);
+        if (existing == null || existing == 0) {
+            try {
+                linked = jdbcTemplate.update(
+                        "INSERT INTO auth_providers (provider, provider_user_id, provider_email, user_id) VALUES (?, ?, ?, ?)",
+                        provider.code(), providerUserId, email, userId) == 1;
+            } catch (DuplicateKeyException race) {
+                linked = false;
+            }
+        }
+        return new ProvisionResult(userId, created, linked, matched != null && matched.backfilled(), null);
+    }
+
+    private record Matched(Long id, boolean backfilled) {}
+
+    private Matched backfillExisting(String email, String displayName, String avatarUrl, OffsetDateTime now) {
+        record Existing(Long id, String displayName, String avatarUrl) {}
+        List<Existing> rows = jdbcTemplate.query("SELECT id, display_name, avatar_url FROM users WHERE email = ?",
+                (rs, i) -> new Existing(rs.getLong("id"), rs.getString("display_name"), rs.getString("avatar_url")),
+                email);
+        if (rows.isEmpty()) {
+            return null;
+        }
+        Existing row = rows.get(0);
+        boolean fillName = isBlank(row.displayName()) && displayName != null;
+        boolean fillAvatar = isBlank(row.avatarUrl()) && avatarUrl != null;
+        if (fillName || fillAvatar) {
+            jdbcTemplate.update("UPDATE users SET display_name = ?, avatar_url = ?, updated_at = ? WHERE id = ?",
+                    fillName ? displayName : row.displayName(),
+                    fillAvatar ? avatarUrl : row.avatarUrl(),
+                    now, row.id());
+        }
+        return new Matched(row.id(), fillName || fillAvatar);
+    }
+
+    // Same rule as the upserts' CASE expressions and backfillExisting: only a blank display name or avatar is filled in
+    private static boolean backfills(String currentName, String currentAvatar, String displayName, String avatarUrl) {
+        return (isBlank(currentName) && displayName != null) || (isBlank(currentAvatar) && avatarUrl != null);
+    }
+
+    private static boolean isBlank(String s) {
+        return s == null || s.isBlank();
+    }
+
+    private static ZonedDateTime toZoned(OffsetDateTime t) {
+        return t == null ? null : t.toZonedDateTime();
+    }
+
+    // Checked on the URL: a Hikari data-source-property does not show up in the connection metadata
+    static boolean reportsAffectedRows(DataSource dataSource) {
+        try {
+            String url = JdbcUtils.extractDatabaseMetaData(dataSource, DatabaseMetaData::getURL);
+            return url != null && url.toLowerCase(Locale.ROOT).contains("useaffectedrows=true");
+        } catch (MetaDataAccessException e) {
+            return false;
+        }
+    }
+
+    static Dialect detectDialect(DataSource dataSource) {
+        try {
+            String product = JdbcUtils.commonDatabaseName(
+                    JdbcUtils.extractDatabaseMetaData(dataSource, DatabaseMetaData::getDatabaseProductName));
+            if ("PostgreSQL".equalsIgnoreCase(product)) {
+                return Dialect.POSTGRESQL;
+            }
+            if ("MySQL".equalsIgnoreCase(product) || "MariaDB".equalsIgnoreCase(product)) {
+                return Dialect.MYSQL;
+            }
+        } catch (MetaDataAccessException e) {
+            log.warn("Could not detect database product, using portable upserts", e);
+        }
+        return Dialect.PORTABLE;
+    }
+}
@@ -0,0 +1,47 @@
+package com.lada.oauthlogin.service;
+
+import com.lada.oauthlogin.cache.IdentityCache;
+import com.lada.oauthlogin.cache.IdentityCache.CachedUser;
+import com.lada.oauthlogin.repository.AuthProviderRepository;
+import com.lada.oauthlogin.repository.UserProfileView;
+import com.lada.oauthlogin.repository.UserRepository;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+import java.util.Optional;
+
+@Service
+public class ProfileQueryService {
+
+    private final UserRepository userRepository;
+    private final IdentityCache identityCache;
+    private final AuthProviderRepository authProviderRepository;
+
+    public ProfileQueryService(UserRepository userRepository, IdentityCache identityCache,
+                               AuthProviderRepository authProviderRepository) {
+        this.userRepository = userRepository;
+        this.identityCache = identityCache;
+        this.authProviderRepository = authProviderRepository;
+    }
+
+    // Callers check IdentityCache first: opening even a read-only transaction acquires a connection
+    @Transactional(readOnly = true)
+    public Optional<CachedUser> findProfile(long userId) {
+        Optional<UserProfileView> view = userRepository.findProfileById(userId);
+        view.ifPresent(v -> identityCache.putUser(toCached(v)));
+        return view.map(ProfileQueryService::toCached);
+    }
+
+    // Single projection query on ix_auth_providers_user; no AuthProvider or User entities are loaded
+    @Transactional(readOnly = true)
+    public List<AccountExportService.ExportedProvider> linkedProviders(long userId) {
+        return authProviderRepository.findLinkedByUserId(userId).stream()
+                .map(AccountExportService::toExported)
+                .toList();
+    }
+
+    private static CachedUser toCached(UserProfileView v) {
+        return new CachedUser(v.getId(), v.getEmail(), v.getDisplayName(), v.getAvatarUrl(), v.getBio(), v.getUpdatedAt());
+    }
+}
@@ -0,0 +1,210 @@
+package com.lada.oauthlogin.service;
+
+import com.lada.oauthlogin.cache.IdentityCache;
+import com.lada.oauthlogin.cache.IdentityCache.CachedUser;
+import com.lada.oauthlogin.datasource.ReadYourWrites;
+import com.lada.oauthlogin.model.User;
+import com.lada.oauthlogin.repository.UserRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Applies profile edits. In the default {@code sync} write mode every change is saved before the
+ * response. In {@code coalesce} mode, changes to the same user within the flush window are merged
+ * in memory, the merged state is returned (and cached) immediately, and a background flush writes
+ * them as JDBC batch updates. The flush only writes the fields that were edited, so a field changed
+ * meanwhile through another node is kept even when the merge started from a stale cached profile.
+ * Updates not yet flushed are lost if the JVM dies; they are flushed on orderly shutdown.
+ */
+@Service
+public class ProfileUpdateService {
+
+    private static final Logger log = LoggerFactory.getLogger(ProfileUpdateService.class);
+
+    // A NULL parameter leaves the column as it is in the database
+    private static final String BATCH_UPDATE = """
+            UPDATE users SET display_name = COALESCE(?, display_name), bio = COALESCE(?, bio), updated_at = ?
+            WHERE id = ?""";
+
+    public enum WriteMode { SYNC, COALESCE }
+
+    private record Pending(CachedUser state, boolean nameEdited, boolean bioEdited, long queuedAtNanos) {}
+
+    private final UserRepository userRepository;
+    private final ProfileQueryService profileQueryService;
+    private final IdentityCache identityCache;
+    private final JdbcTemplate jdbcTemplate;
+    private final ReadYourWrites readYourWrites;
+    private final WriteMode writeMode;
+    private final long maxDelayNanos;
+    private final int batchSize;
+    private final int maxPending;
+
+    private final ConcurrentHashMap<Long, Pending> pending = new ConcurrentHashMap<>();
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    public ProfileUpdateService(UserRepository userRepository, ProfileQueryService profileQueryService,
+                                IdentityCache identityCache, JdbcTemplate jdbcTemplate, ReadYourWrites readYourWrites,
+                                @Value("${app.profile.write-mode:sync}") String writeMode,
+                                @Value("${app.profile.max-delay:1s}") Duration maxDelay,
+                                @Value("${app.profile.batch-size:500}") int batchSize,
+                                @Value("${app.profile.max-pending:10000}") int maxPending) {
+        this.userRepository = userRepository;
+        this.profileQueryService = profileQueryService;
+        this.identityCache = identityCache;
+        this.jdbcTemplate = jdbcTemplate;
+        this.readYourWrites = readYourWrites;
+        this.writeMode = WriteMode.valueOf(writeMode.trim().toUpperCase());
+        this.maxDelayNanos = maxDelay.toNanos();
+        this.batchSize = batchSize;
+        this.maxPending = maxPending;
+    }
+
+    // Returns the (possibly merged) profile state, or empty if the user does not exist
+    // The read before the write goes to the primary, and the user stays sticky for the flush delay + lag
+    public Optional<CachedUser> update(long userId, String email, String displayName, String bio) {
+        return readYourWrites.writing(userId, () -> writeMode == WriteMode.SYNC
+                ? updateNow(userId, displayName, bio)
+                : enqueue(userId, email, displayName, bio));
+    }
+
+    private Optional<CachedUser> updateNow(long userId, String displayName, String bio) {
+        User user = userRepository.findById(userId).orElse(null);
+        if (user == null) {
+            return Optional.empty();
+        }
+
+        boolean dirty = false;
+        if (displayName != null && !displayName.trim().isEmpty() && !displayName.trim().equals(user.getDisplayName())) {
+            user.setDisplayName(displayName.trim());
+            dirty = true;
+        }
+        if (bio != null && !bio.equals(user.getBio())) {
+            user.setBio(bio.trim());
+            dirty = true;
+        }
+
+        if (dirty) {
+            user = userRepository.save(user);
+            identityCache.putUser(user);
+        }
+        return Optional.of(CachedUser.of(user));
+    }
+
+    private Optional<CachedUser> enqueue(long userId, String email, String displayName, String bio) {
+        Pending queued = pending.get(userId);
+        CachedUser base = queued != null ? queued.state() : current(userId, email);
+        if (base == null) {
+            return Optional.empty();
+        }
+
+        Pending merged = pending.compute(userId, (id, existing) -> {
+            CachedUser from = existing != null ? existing.state() : base;
+            String newName = displayName != null && !displayName.trim().isEmpty() ? displayName.trim() : from.displayName();
+            String newBio = bio != null ? bio.trim() : from.bio();
+            boolean nameChanged = !Objects.equals(newName, from.displayName());
+            boolean bioChanged = !Objects.equals(newBio, from.bio());
+            if (!nameChanged && !bioChanged) {
+                return existing;
+            }
+            CachedUser state = new CachedUser(from.id(), from.email(), newName, from.avatarUrl(), newBio,
+                    OffsetDateTime.now(ZoneOffset.UTC).toZonedDateTime());
+            return existing == null
+                    ? new Pending(state, nameChanged, bioChanged, System.nanoTime())
+                    : new Pending(state, existing.nameEdited() || nameChanged, existing.bioEdited() || bioChanged,
+                            existing.queuedAtNanos());
+        });
+
+        if (merged == null) {
+            return Optional.of(base);
+        }
+        identityCache.putUser(merged.state());
+        if (pending.size() >= maxPending) {
+            flush(true);
+        }
+        return Optional.of(merged.state());
+    }
+
+    private CachedUser current(long userId, String email) {
+        CachedUser cached = identityCache.getUser(email);
+        if (cached != null && cached.id() == userId) {
+            return cached;
+        }
+        return profileQueryService.findProfile(userId).orElse(null);
+    }
+
+    @Scheduled(fixedDelayString = "${app.profile.flush-interval-ms:200}")
+    public void flushDue() {
+        if (!pending.isEmpty()) {
+            flush(false);
+        }
+    }
+
+    @PreDestroy
+    public void flushAll() {
+        flush(true);
+    }
+
+    private void flush(boolean all) {
+        if (!flushLock.tryLock()) {
+            return;
+        }
+        try {
+            long now = System.nanoTime();
+            List<Pending> batch = new ArrayList<>(Math.min(pending.size(), batchSize));
+            for (Map.Entry<Long, Pending> e : pending.entrySet()) {
+                Pending p = e.getValue();
+                // remove(key, value) only succeeds if no newer merge replaced the entry meanwhile
+                if ((all || now - p.queuedAtNanos() >= maxDelayNanos) && pending.remove(e.getKey(), p)) {
+                    batch.add(p);
+                    if (batch.size() == batchSize) {
+                        write(batch);
+                        batch.clear();
+                    }
+                }
+            }
+            if (!batch.isEmpty()) {
+                write(batch);
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void write(List<Pending> batch) {
+        try {
+            jdbcTemplate.batchUpdate(BATCH_UPDATE, batch, batch.size(), (ps, p) -> {
+                ps.setString(1, p.nameEdited() ? p.state().displayName() : null);
+                ps.setString(2, p.bioEdited() ? p.state().bio() : null);
+                ps.setObject(3, p.state().updatedAt().toOffsetDateTime());
+                ps.setLong(4, p.state().id());
+            });
+        } catch (RuntimeException e) {
+            // Requeue unless a newer edit for the same user arrived meanwhile; the next flush retries
+            log.warn("Profile batch of {} failed, requeueing", batch.size(), e);
+            for (Pending p : batch) {
+                pending.putIfAbsent(p.state().id(), p);
+            }
+        }
+    }
+
+    public int pendingCount() {
+        return pending.size();
+    }
+}
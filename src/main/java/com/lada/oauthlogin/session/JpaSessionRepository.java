@@ -0,0 +1,142 @@
+package com.lada.oauthlogin.session;
+
+import com.lada.oauthlogin.cache.BoundedTtlCache;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.web.context.HttpSessionSecurityContextRepository;
+import org.springframework.session.MapSession;
+import org.springframework.session.SessionRepository;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Session repository on the application's JPA datasource, so any node can serve any session.
+ * A per-node near-cache saves reading and decoding the attributes on repeat reads: a cached copy is
+ * only served while its revision matches the row's, so a session changed on another node (an
+ * authorization request saved before the callback lands here, a logout) is always reloaded. Pure
+ * "touch" saves are throttled to one write per touch interval.
+ */
+public class JpaSessionRepository implements SessionRepository<StoredSession> {
+
+    record CachedSession(MapSession session, long revision) {}
+
+    private final SessionRecordRepository records;
+    private final Duration defaultMaxInactive;
+    private final Duration touchInterval;
+    private final BoundedTtlCache<String, CachedSession> nearCache;
+
+    public JpaSessionRepository(SessionRecordRepository records, Duration defaultMaxInactive,
+                                Duration touchInterval, BoundedTtlCache<String, CachedSession> nearCache) {
+        this.records = records;
+        this.defaultMaxInactive = defaultMaxInactive;
+        this.touchInterval = touchInterval;
+        this.nearCache = nearCache;
+    }
+
+    @Override
+    public StoredSession createSession() {
+        MapSession session = new MapSession();
+        session.setMaxInactiveInterval(defaultMaxInactive);
+        return new StoredSession(session, true, 0);
+    }
+
+    @Override
+    public void save(StoredSession session) {
+        MapSession s = session.delegate();
+        String id = s.getId();
+        boolean idChanged = !id.equals(session.originalId());
+        long revision = session.revision();
+
+        if (session.isNew() || idChanged || session.attributesChanged() || session.maxInactiveChanged()) {
+            if (idChanged && !session.isNew()) {
+                records.deleteById(session.originalId());
+                nearCache.invalidate(session.originalId());
+            }
+            revision = ThreadLocalRandom.current().nextLong();
+            records.save(toRecord(s, session.isNew() || idChanged, revision));
+        } else if (Duration.between(session.persistedAccessTime(), s.getLastAccessedTime()).compareTo(touchInterval) >= 0) {
+            records.touch(id, s.getLastAccessedTime().toEpochMilli(), expiry(s));
+        }
+
+        session.markSaved(revision);
+        nearCache.put(id, new CachedSession(new MapSession(s), revision));
+    }
+
+    @Override
+    public StoredSession findById(String id) {
+        CachedSession cached = nearCache.get(id);
+        // A copy that looks expired may have been touched on another node since; the row decides
+        if (cached != null && !cached.session().isExpired()) {
+            Long revision = records.findRevision(id).orElse(null);
+            if (revision == null) {
+                nearCache.invalidate(id);
+                return null;
+            }
+            if (revision == cached.revision()) {
+                return new StoredSession(new MapSession(cached.session()), false, revision);
+            }
+        }
+
+        SessionRecord record = records.findById(id).orElse(null);
+        if (record == null) {
+            return null;
+        }
+        MapSession s = fromRecord(record);
+        if (s.isExpired()) {
+            deleteById(id);
+            return null;
+        }
+        nearCache.put(id, new CachedSession(new MapSession(s), record.getRevision()));
+        return new StoredSession(s, false, record.getRevision());
+    }
+
+    @Override
+    public void deleteById(String id) {
+        nearCache.invalidate(id);
+        records.deleteById(id);
+    }
+
+    private static SessionRecord toRecord(MapSession s, boolean isNew, long revision) {
+        Map<String, Object> attributes = new HashMap<>();
+        for (String name : s.getAttributeNames()) {
+            attributes.put(name, s.getAttribute(name));
+        }
+
+        SessionRecord r = new SessionRecord();
+        r.setNew(isNew);
+        r.setId(s.getId());
+        r.setPrincipalName(principalName(s));
+        r.setCreationTime(s.getCreationTime().toEpochMilli());
+        r.setLastAccessTime(s.getLastAccessedTime().toEpochMilli());
+        r.setMaxInactiveSeconds((int) s.getMaxInactiveInterval().toSeconds());
+        r.setExpiryTime(expiry(s));
+        r.setAttributes(SessionAttributeCodec.encode(attributes));
+        r.setRevision(revision);
+        return r;
+    }
+
+    private static MapSession fromRecord(SessionRecord r) {
+        MapSession s = new MapSession(r.getId());
+        s.setCreationTime(Instant.ofEpochMilli(r.getCreationTime()));
+        s.setLastAccessedTime(Instant.ofEpochMilli(r.getLastAccessTime()));
+        s.setMaxInactiveInterval(Duration.ofSeconds(r.getMaxInactiveSeconds()));
+        SessionAttributeCodec.decode(r.getAttributes()).forEach(s::setAttribute);
+        return s;
+    }
+
+    private static long expiry(MapSession s) {
+        Duration maxInactive = s.getMaxInactiveInterval();
+        return maxInactive.isNegative() ? Long.MAX_VALUE : s.getLastAccessedTime().plus(maxInactive).toEpochMilli();
+    }
+
+    private static String principalName(MapSession s) {
+        Object ctx = s.getAttribute(HttpSessionSecurityContextRepository.SPRING_SECURITY_CONTEXT_KEY);
+        if (ctx instanceof SecurityContext sc && sc.getAuthentication() != null) {
+            return sc.getAuthentication().getName();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,376 @@
+package com.lada.oauthlogin.session;
+
+import com.lada.oauthlogin.security.AppOidcUserPrincipal;
+import com.lada.oauthlogin.security.AppUserPrincipal;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextImpl;
+import org.springframework.security.oauth2.client.authentication.OAuth2AuthenticationToken;
+import org.springframework.security.oauth2.core.oidc.OidcIdToken;
+import org.springframework.security.oauth2.core.oidc.OidcUserInfo;
+import org.springframework.security.oauth2.core.oidc.user.DefaultOidcUser;
+import org.springframework.security.oauth2.core.user.DefaultOAuth2User;
+import org.springframework.security.oauth2.core.user.OAuth2User;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary encoding for session attributes. The OAuth2/OIDC security context and plain
+ * scalar/collection values get a tagged encoding; anything else falls back to Java serialization.
+ * An attribute value only gets a tagged encoding when it decodes to the same class (an ArrayList,
+ * a LinkedHashMap, a plain SecurityContextImpl), so callers never get a different collection or
+ * context type back. Authentication details (remote address, old session id) are not kept.
+ */
+final class SessionAttributeCodec {
+
+    private static final byte FORMAT = 1;
+
+    private static final byte T_NULL = 0;
+    private static final byte T_STRING = 1;
+    private static final byte T_LONG = 2;
+    private static final byte T_INT = 3;
+    private static final byte T_BOOLEAN = 4;
+    private static final byte T_DOUBLE = 5;
+    private static final byte T_INSTANT = 6;
+    private static final byte T_LIST = 7;
+    private static final byte T_MAP = 8;
+    private static final byte T_URL = 9;
+    private static final byte T_OAUTH2_CONTEXT = 20;
+    private static final byte T_APP_CONTEXT = 21;
+    private static final byte T_SERIALIZED = 99;
+
+    private static final byte P_OAUTH2 = 0;
+    private static final byte P_OIDC = 1;
+
+    private SessionAttributeCodec() {
+    }
+
+    static byte[] encode(Map<String, Object> attributes) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(FORMAT);
+            out.writeInt(attributes.size());
+            for (Map.Entry<String, Object> e : attributes.entrySet()) {
+                writeString(out, e.getKey());
+                writeValue(out, e.getValue(), true);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static Map<String, Object> decode(byte[] data) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+            if (in.readByte() != FORMAT) {
+                throw new IOException("Unknown session format");
+            }
+            int n = in.readInt();
+            Map<String, Object> attributes = new LinkedHashMap<>(n * 2);
+            for (int i = 0; i < n; i++) {
+                attributes.put(readString(in), readValue(in));
+            }
+            return attributes;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeValue(DataOutputStream out, Object v) throws IOException {
+        writeValue(out, v, false);
+    }
+
+    // exact: the value must decode to its own class; claim and attribute maps inside tokens need not
+    private static void writeValue(DataOutputStream out, Object v, boolean exact) throws IOException {
+        if (v == null) {
+            out.writeByte(T_NULL);
+        } else if (v instanceof String s) {
+            out.writeByte(T_STRING);
+            writeString(out, s);
+        } else if (v instanceof Long l) {
+            out.writeByte(T_LONG);
+            out.writeLong(l);
+        } else if (v instanceof Integer i) {
+            out.writeByte(T_INT);
+            out.writeInt(i);
+        } else if (v instanceof Boolean b) {
+            out.writeByte(T_BOOLEAN);
+            out.writeBoolean(b);
+        } else if (v instanceof Double d) {
+            out.writeByte(T_DOUBLE);
+            out.writeDouble(d);
+        } else if (v instanceof Instant t) {
+            out.writeByte(T_INSTANT);
+            out.writeLong(t.getEpochSecond());
+            out.writeInt(t.getNano());
+        } else if (v instanceof URL url) {
+            out.writeByte(T_URL);
+            writeString(out, url.toString());
+        } else if (v instanceof List<?> list && (!exact || list.getClass() == ArrayList.class)) {
+            out.writeByte(T_LIST);
+            out.writeInt(list.size());
+            for (Object item : list) {
+                writeValue(out, item, exact);
+            }
+        } else if (v instanceof Map<?, ?> map && (!exact || map.getClass() == LinkedHashMap.class)
+                && map.keySet().stream().allMatch(String.class::isInstance)) {
+            out.writeByte(T_MAP);
+            writeMap(out, map, exact);
+        } else if (v instanceof SecurityContext ctx && (!exact || ctx.getClass() == SecurityContextImpl.class)
+                && isAppContext(ctx)) {
+            out.writeByte(T_APP_CONTEXT);
+            writeAppContext(out, (OAuth2AuthenticationToken) ctx.getAuthentication());
+        } else if (v instanceof SecurityContext ctx && (!exact || ctx.getClass() == SecurityContextImpl.class)
+                && isCompactable(ctx)) {
+            out.writeByte(T_OAUTH2_CONTEXT);
+            writeOAuth2Context(out, (OAuth2AuthenticationToken) ctx.getAuthentication());
+        } else {
+            out.writeByte(T_SERIALIZED);
+            byte[] serialized = javaSerialize(v);
+            out.writeInt(serialized.length);
+            out.write(serialized);
+        }
+    }
+
+    private static Object readValue(DataInputStream in) throws IOException {
+        byte tag = in.readByte();
+        return switch (tag) {
+            case T_NULL -> null;
+            case T_STRING -> readString(in);
+            case T_LONG -> in.readLong();
+            case T_INT -> in.readInt();
+            case T_BOOLEAN -> in.readBoolean();
+            case T_DOUBLE -> in.readDouble();
+            case T_INSTANT -> Instant.ofEpochSecond(in.readLong(), in.readInt());
+            case T_URL -> URI.create(readString(in)).toURL();
+            case T_LIST -> {
+                int n = in.readInt();
+                List<Object> list = new ArrayList<>(n);
+                for (int i = 0; i < n; i++) {
+                    list.add(readValue(in));
+                }
+                yield list;
+            }
+            case T_MAP -> readMap(in);
+            case T_OAUTH2_CONTEXT -> readOAuth2Context(in);
+            case T_APP_CONTEXT -> readAppContext(in);
+            case T_SERIALIZED -> {
+                byte[] serialized = new byte[in.readInt()];
+                in.readFully(serialized);
+                yield javaDeserialize(serialized);
+            }
+            default -> throw new IOException("Unknown value tag " + tag);
+        };
+    }
+
+    private static void writeMap(DataOutputStream out, Map<?, ?> map) throws IOException {
+        writeMap(out, map, false);
+    }
+
+    private static void writeMap(DataOutputStream out, Map<?, ?> map, boolean exact) throws IOException {
+        out.writeInt(map.size());
+        for (Map.Entry<?, ?> e : map.entrySet()) {
+            writeString(out, (String) e.getKey());
+            writeValue(out, e.getValue(), exact);
+        }
+    }
+
+    private static Map<String, Object> readMap(DataInputStream in) throws IOException {
+        int n = in.readInt();
+        Map<String, Object> map = new LinkedHashMap<>(n * 2);
+        for (int i = 0; i < n; i++) {
+            map.put(readString(in), readValue(in));
+        }
+        return map;
+    }
+
+    // --- Compact application principal (the normal case since login returns AppUserPrincipal) ---
+
+    private static boolean isAppContext(SecurityContext ctx) {
+        return ctx.getAuthentication() instanceof OAuth2AuthenticationToken token
+                && token.getClass() == OAuth2AuthenticationToken.class
+                && (token.getPrincipal().getClass() == AppUserPrincipal.class
+                    || token.getPrincipal().getClass() == AppOidcUserPrincipal.class);
+    }
+
+    private static void writeAppContext(DataOutputStream out, OAuth2AuthenticationToken token) throws IOException {
+        writeString(out, token.getAuthorizedClientRegistrationId());
+        writeAuthorities(out, token.getAuthorities());
+
+        AppUserPrincipal p = (AppUserPrincipal) token.getPrincipal();
+        out.writeLong(p.getUserId());
+        writeString(out, p.getProvider());
+        writeString(out, p.getEmail());
+        writeValue(out, p.getDisplayName());
+        writeValue(out, p.getAvatarUrl());
+        writeString(out, p.getName());
+        writeAuthorities(out, p.getAuthorities());
+
+        boolean oidc = p instanceof AppOidcUserPrincipal;
+        out.writeBoolean(oidc);
+        if (oidc) {
+            OidcIdToken idToken = ((AppOidcUserPrincipal) p).getIdToken();
+            writeString(out, idToken.getTokenValue());
+            writeValue(out, idToken.getIssuedAt());
+            writeValue(out, idToken.getExpiresAt());
+            writeMap(out, idToken.getClaims());
+        }
+    }
+
+    private static SecurityContext readAppContext(DataInputStream in) throws IOException {
+        String registrationId = readString(in);
+        List<GrantedAuthority> tokenAuthorities = readAuthorities(in);
+
+        AppUserPrincipal p = new AppUserPrincipal(in.readLong(), readString(in), readString(in),
+                (String) readValue(in), (String) readValue(in), readString(in), readAuthorities(in), null);
+        if (in.readBoolean()) {
+            String tokenValue = readString(in);
+            Instant issuedAt = (Instant) readValue(in);
+            Instant expiresAt = (Instant) readValue(in);
+            p = new AppOidcUserPrincipal(p, new OidcIdToken(tokenValue, issuedAt, expiresAt, readMap(in)));
+        }
+        return new SecurityContextImpl(new OAuth2AuthenticationToken(p, tokenAuthorities, registrationId));
+    }
+
+    // --- OAuth2 / OIDC security context ---
+
+    private static boolean isCompactable(SecurityContext ctx) {
+        return ctx.getAuthentication() instanceof OAuth2AuthenticationToken token
+                && token.getClass() == OAuth2AuthenticationToken.class
+                && token.getPrincipal() instanceof DefaultOAuth2User user
+                && (user.getClass() == DefaultOAuth2User.class || user.getClass() == DefaultOidcUser.class)
+                && token.getAuthorities().stream().allMatch(a -> a.getClass() == SimpleGrantedAuthority.class)
+                && nameAttributeKey(user) != null;
+    }
+
+    private static void writeOAuth2Context(DataOutputStream out, OAuth2AuthenticationToken token) throws IOException {
+        writeString(out, token.getAuthorizedClientRegistrationId());
+        writeAuthorities(out, token.getAuthorities());
+
+        OAuth2User user = token.getPrincipal();
+        if (user instanceof DefaultOidcUser oidc) {
+            out.writeByte(P_OIDC);
+            OidcIdToken idToken = oidc.getIdToken();
+            writeString(out, idToken.getTokenValue());
+            writeValue(out, idToken.getIssuedAt());
+            writeValue(out, idToken.getExpiresAt());
+            writeMap(out, idToken.getClaims());
+            writeValue(out, oidc.getUserInfo() == null ? null : oidc.getUserInfo().getClaims());
+        } else {
+            out.writeByte(P_OAUTH2);
+            writeMap(out, user.getAttributes());
+        }
+        writeAuthorities(out, user.getAuthorities());
+        writeString(out, nameAttributeKey(user));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static SecurityContext readOAuth2Context(DataInputStream in) throws IOException {
+        String registrationId = readString(in);
+        List<GrantedAuthority> tokenAuthorities = readAuthorities(in);
+
+        byte kind = in.readByte();
+        OAuth2User user;
+        if (kind == P_OIDC) {
+            String tokenValue = readString(in);
+            Instant issuedAt = (Instant) readValue(in);
+            Instant expiresAt = (Instant) readValue(in);
+            Map<String, Object> claims = readMap(in);
+            Map<String, Object> userInfoClaims = (Map<String, Object>) readValue(in);
+            List<GrantedAuthority> authorities = readAuthorities(in);
+            String nameKey = readString(in);
+            user = new DefaultOidcUser(authorities, new OidcIdToken(tokenValue, issuedAt, expiresAt, claims),
+                    userInfoClaims == null ? null : new OidcUserInfo(userInfoClaims), nameKey);
+        } else {
+            Map<String, Object> attributes = readMap(in);
+            List<GrantedAuthority> authorities = readAuthorities(in);
+            user = new DefaultOAuth2User(authorities, attributes, readString(in));
+        }
+        return new SecurityContextImpl(new OAuth2AuthenticationToken(user, tokenAuthorities, registrationId));
+    }
+
+    private static void writeAuthorities(DataOutputStream out, Collection<? extends GrantedAuthority> authorities) throws IOException {
+        out.writeInt(authorities.size());
+        for (GrantedAuthority a : authorities) {
+            writeString(out, a.getAuthority());
+        }
+    }
+
+    private static List<GrantedAuthority> readAuthorities(DataInputStream in) throws IOException {
+        int n = in.readInt();
+        List<GrantedAuthority> authorities = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            authorities.add(new SimpleGrantedAuthority(readString(in)));
+        }
+        return authorities;
+    }
+
+    // DefaultOAuth2User does not expose its name attribute key; recover it from the attribute holding getName()
+    static String nameAttributeKey(OAuth2User user) {
+        String name = user.getName();
+        Map<String, Object> attributes = user.getAttributes();
+        for (String preferred : List.of("sub", "id", "email", "login")) {
+            Object v = attributes.get(preferred);
+            if (v != null && name.equals(v.toString())) {
+                return preferred;
+            }
+        }
+        for (Map.Entry<String, Object> e : attributes.entrySet()) {
+            if (e.getValue() != null && name.equals(e.getValue().toString())) {
+                return e.getKey();
+            }
+        }
+        return null;
+    }
+
+    // --- primitives ---
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(b.length);
+        out.write(b);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] b = new byte[in.readInt()];
+        in.readFully(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] javaSerialize(Object v) throws IOException {
+        if (!(v instanceof Serializable)) {
+            throw new IOException("Session attribute is not serializable: " + v.getClass().getName());
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(v);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Object javaDeserialize(byte[] data) throws IOException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(data))) {
+            return in.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        }
+    }
+}
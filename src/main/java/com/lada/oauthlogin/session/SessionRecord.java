@@ -0,0 +1,61 @@
+package com.lada.oauthlogin.session;
+
+import jakarta.persistence.*;
+import org.springframework.data.domain.Persistable;
+
+@Entity
+@Table(name = "http_sessions", indexes = @Index(name = "ix_http_sessions_expiry", columnList = "expiryTime"))
+public class SessionRecord implements Persistable<String> {
+
+    @Id
+    @Column(length = 64)
+    private String id;
+
+    private String principalName;
+
+    @Column(nullable = false)
+    private long creationTime;
+
+    @Column(nullable = false)
+    private long lastAccessTime;
+
+    @Column(nullable = false)
+    private int maxInactiveSeconds;
+
+    // Epoch millis after which the session is garbage; indexed for the batched cleanup
+    @Column(nullable = false)
+    private long expiryTime;
+
+    @Column(length = 1_000_000)
+    private byte[] attributes;
+
+    // New random value on every attribute write; near-caches compare it before serving their copy
+    @Column(nullable = false)
+    private long revision;
+
+    // Assigned ids make Spring Data treat every record as existing (merge = extra SELECT); new sessions persist directly
+    @Transient
+    private boolean newRecord;
+
+    @Override
+    public boolean isNew() { return newRecord; }
+    public void setNew(boolean newRecord) { this.newRecord = newRecord; }
+
+    // getters/setters
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+    public String getPrincipalName() { return principalName; }
+    public void setPrincipalName(String principalName) { this.principalName = principalName; }
+    public long getCreationTime() { return creationTime; }
+    public void setCreationTime(long creationTime) { this.creationTime = creationTime; }
+    public long getLastAccessTime() { return lastAccessTime; }
+    public void setLastAccessTime(long lastAccessTime) { this.lastAccessTime = lastAccessTime; }
+    public int getMaxInactiveSeconds() { return maxInactiveSeconds; }
+    public void setMaxInactiveSeconds(int maxInactiveSeconds) { this.maxInactiveSeconds = maxInactiveSeconds; }
+    public long getExpiryTime() { return expiryTime; }
+    public void setExpiryTime(long expiryTime) { this.expiryTime = expiryTime; }
+    public byte[] getAttributes() { return attributes; }
+    public void setAttributes(byte[] attributes) { this.attributes = attributes; }
+    public long getRevision() { return revision; }
+    public void setRevision(long revision) { this.revision = revision; }
+}
@@ -0,0 +1,38 @@
+package com.lada.oauthlogin.session;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+public interface SessionRecordRepository extends JpaRepository<SessionRecord, String> {
+
+    // Not read-only: a session is usually read right after the previous request wrote it, so never from a replica
+    @Override
+    @Transactional
+    Optional<SessionRecord> findById(String id);
+
+    // Primary as well; a near-cache hit still costs this one-column primary key lookup
+    @Transactional
+    @Query("select s.revision from SessionRecord s where s.id = :id")
+    Optional<Long> findRevision(@Param("id") String id);
+
+    @Query("select s.id from SessionRecord s where s.expiryTime < :now order by s.expiryTime")
+    List<String> findExpiredIds(@Param("now") long now, Pageable page);
+
+    @Transactional
+    @Modifying
+    @Query("delete from SessionRecord s where s.id in :ids")
+    int deleteByIds(@Param("ids") Collection<String> ids);
+
+    @Transactional
+    @Modifying
+    @Query("update SessionRecord s set s.lastAccessTime = :lastAccess, s.expiryTime = :expiry where s.id = :id")
+    int touch(@Param("id") String id, @Param("lastAccess") long lastAccess, @Param("expiry") long expiry);
+}
@@ -0,0 +1,66 @@
+package com.lada.oauthlogin.session;
+
+import com.lada.oauthlogin.cache.BoundedTtlCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.session.config.annotation.web.http.EnableSpringHttpSession;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Clustered HttpSession store: app.session.store=jdbc replaces the container's in-memory sessions
+ * (security context, OAuth2 authorization request and authorized client) with {@link JpaSessionRepository}.
+ */
+@Configuration
+@EnableSpringHttpSession
+@ConditionalOnProperty(name = "app.session.store", havingValue = "jdbc")
+public class SessionStoreConfig {
+
+    private static final Logger log = LoggerFactory.getLogger(SessionStoreConfig.class);
+
+    private final SessionRecordRepository records;
+
+    @Value("${app.session.cleanup.batch-size:500}")
+    private int cleanupBatchSize;
+
+    @Value("${app.session.cleanup.max-batches:100}")
+    private int cleanupMaxBatches;
+
+    public SessionStoreConfig(SessionRecordRepository records) {
+        this.records = records;
+    }
+
+    @Bean
+    public JpaSessionRepository sessionRepository(
+            @Value("${server.servlet.session.timeout:30m}") Duration timeout,
+            @Value("${app.session.touch-interval:1m}") Duration touchInterval,
+            @Value("${app.session.near-cache.max-size:10000}") int nearCacheSize,
+            @Value("${app.session.near-cache.ttl:5s}") Duration nearCacheTtl) {
+        return new JpaSessionRepository(records, timeout, touchInterval,
+                new BoundedTtlCache<String, JpaSessionRepository.CachedSession>(nearCacheSize, nearCacheTtl));
+    }
+
+    // Small id-batches, each in its own short transaction, so cleanup never holds wide locks on http_sessions
+    @Scheduled(fixedDelayString = "${app.session.cleanup.interval-ms:60000}")
+    public void deleteExpiredSessions() {
+        long now = System.currentTimeMillis();
+        int deleted = 0;
+        for (int batch = 0; batch < cleanupMaxBatches; batch++) {
+            List<String> ids = records.findExpiredIds(now, PageRequest.of(0, cleanupBatchSize));
+            if (ids.isEmpty()) {
+                break;
+            }
+            deleted += records.deleteByIds(ids);
+        }
+        if (deleted > 0) {
+            log.info("Deleted {} expired sessions", deleted);
+        }
+    }
+}
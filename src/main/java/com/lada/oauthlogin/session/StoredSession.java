@@ -0,0 +1,109 @@
+package com.lada.oauthlogin.session;
+
+import org.springframework.session.MapSession;
+import org.springframework.session.Session;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Set;
+
+/**
+ * Session handed to SessionRepositoryFilter by {@link JpaSessionRepository}; tracks what changed
+ * so a save only writes what it has to.
+ */
+final class StoredSession implements Session {
+
+    private final MapSession delegate;
+    private boolean isNew;
+    private String originalId;
+    private boolean attributesChanged;
+    private final Instant persistedAccessTime;
+    private final Duration persistedMaxInactive;
+    private long revision;
+
+    StoredSession(MapSession delegate, boolean isNew, long revision) {
+        this.delegate = delegate;
+        this.isNew = isNew;
+        this.revision = revision;
+        this.originalId = delegate.getId();
+        this.persistedAccessTime = delegate.getLastAccessedTime();
+        this.persistedMaxInactive = delegate.getMaxInactiveInterval();
+    }
+
+    MapSession delegate() { return delegate; }
+    boolean isNew() { return isNew; }
+    String originalId() { return originalId; }
+    boolean attributesChanged() { return attributesChanged; }
+    boolean maxInactiveChanged() { return !persistedMaxInactive.equals(delegate.getMaxInactiveInterval()); }
+    Instant persistedAccessTime() { return persistedAccessTime; }
+    long revision() { return revision; }
+
+    void markSaved(long revision) {
+        this.revision = revision;
+        isNew = false;
+        originalId = delegate.getId();
+        attributesChanged = false;
+    }
+
+    @Override
+    public String getId() {
+        return delegate.getId();
+    }
+
+    @Override
+    public String changeSessionId() {
+        return delegate.changeSessionId();
+    }
+
+    @Override
+    public <T> T getAttribute(String attributeName) {
+        return delegate.getAttribute(attributeName);
+    }
+
+    @Override
+    public Set<String> getAttributeNames() {
+        return delegate.getAttributeNames();
+    }
+
+    @Override
+    public void setAttribute(String attributeName, Object attributeValue) {
+        delegate.setAttribute(attributeName, attributeValue);
+        attributesChanged = true;
+    }
+
+    @Override
+    public void removeAttribute(String attributeName) {
+        delegate.removeAttribute(attributeName);
+        attributesChanged = true;
+    }
+
+    @Override
+    public Instant getCreationTime() {
+        return delegate.getCreationTime();
+    }
+
+    @Override
+    public void setLastAccessedTime(Instant lastAccessedTime) {
+        delegate.setLastAccessedTime(lastAccessedTime);
+    }
+
+    @Override
+    public Instant getLastAccessedTime() {
+        return delegate.getLastAccessedTime();
+    }
+
+    @Override
+    public void setMaxInactiveInterval(Duration interval) {
+        delegate.setMaxInactiveInterval(interval);
+    }
+
+    @Override
+    public Duration getMaxInactiveInterval() {
+        return delegate.getMaxInactiveInterval();
+    }
+
+    @Override
+    public boolean isExpired() {
+        return delegate.isExpired();
+    }
+}
@@ -0,0 +1,64 @@
+-- One-off conversion of a schema created by the old spring.jpa.hibernate.ddl-auto=update (provider stored as
+-- its name, Hibernate-named keys, no session table) into the layout of V1__identity_schema.sql.
+-- Back up first and run it once with the application stopped, then start the application with
+-- spring.flyway.baseline-on-migrate=true and spring.flyway.baseline-version=1: Flyway records V1 as applied
+-- and runs V2 onwards. The Hibernate key names are not known in advance, so they are dropped by lookup.
+
+-- auth_providers: drop Hibernate's foreign key, then every secondary index (its unique key and the
+-- foreign key's index)
+SET @ddl = (SELECT COALESCE(CONCAT('ALTER TABLE auth_providers ',
+                                   GROUP_CONCAT(CONCAT('DROP FOREIGN KEY `', constraint_name, '`'))), 'DO 0')
+            FROM information_schema.referential_constraints
+            WHERE constraint_schema = DATABASE() AND table_name = 'auth_providers');
+PREPARE stmt FROM @ddl;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+SET @ddl = (SELECT COALESCE(CONCAT('ALTER TABLE auth_providers ',
+                                   GROUP_CONCAT(DISTINCT CONCAT('DROP INDEX `', index_name, '`'))), 'DO 0')
+            FROM information_schema.statistics
+            WHERE table_schema = DATABASE() AND table_name = 'auth_providers' AND index_name <> 'PRIMARY');
+PREPARE stmt FROM @ddl;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+-- provider name -> SMALLINT code (1 = GOOGLE, 2 = GITHUB); any other value stops the script at the NOT NULL below
+ALTER TABLE auth_providers ADD COLUMN provider_code SMALLINT NULL AFTER user_id;
+UPDATE auth_providers SET provider_code = CASE provider WHEN 'GOOGLE' THEN 1 WHEN 'GITHUB' THEN 2 END;
+ALTER TABLE auth_providers DROP COLUMN provider;
+ALTER TABLE auth_providers CHANGE COLUMN provider_code provider SMALLINT NOT NULL;
+
+-- users: Hibernate created one or two unique keys on email
+SET @ddl = (SELECT COALESCE(CONCAT('ALTER TABLE users ',
+                                   GROUP_CONCAT(DISTINCT CONCAT('DROP INDEX `', index_name, '`'))), 'DO 0')
+            FROM information_schema.statistics
+            WHERE table_schema = DATABASE() AND table_name = 'users' AND index_name <> 'PRIMARY');
+PREPARE stmt FROM @ddl;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+-- created_at / updated_at are already DATETIME(6), which V6 would convert them to anyway
+ALTER TABLE users
+    MODIFY email VARCHAR(255) NOT NULL,
+    MODIFY avatar_url VARCHAR(1024),
+    MODIFY bio VARCHAR(500) DEFAULT '',
+    ADD CONSTRAINT uk_users_email UNIQUE (email);
+
+ALTER TABLE auth_providers
+    MODIFY provider_user_id VARCHAR(255) NOT NULL,
+    ADD CONSTRAINT uk_auth_providers_identity UNIQUE (provider, provider_user_id),
+    ADD INDEX ix_auth_providers_lookup (provider, provider_user_id, user_id),
+    ADD INDEX ix_auth_providers_user (user_id, provider),
+    ADD CONSTRAINT fk_auth_providers_user FOREIGN KEY (user_id) REFERENCES users (id) ON DELETE CASCADE;
+
+-- Spring Session store, as in V1
+CREATE TABLE http_sessions (
+    id                   VARCHAR(64) NOT NULL PRIMARY KEY,
+    principal_name       VARCHAR(255),
+    creation_time        BIGINT NOT NULL,
+    last_access_time     BIGINT NOT NULL,
+    max_inactive_seconds INT NOT NULL,
+    expiry_time          BIGINT NOT NULL,
+    attributes           MEDIUMBLOB,
+    INDEX ix_http_sessions_expiry (expiry_time)
+) ENGINE = InnoDB;
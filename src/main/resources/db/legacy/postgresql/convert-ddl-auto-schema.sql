@@ -0,0 +1,50 @@
+-- One-off conversion of a schema created by the old spring.jpa.hibernate.ddl-auto=update (provider stored as
+-- its name, Hibernate-named constraints, no session table) into the layout of V1__identity_schema.sql.
+-- Back up first and run it once with the application stopped, then start the application with
+-- spring.flyway.baseline-on-migrate=true and spring.flyway.baseline-version=1: Flyway records V1 as applied
+-- and runs V2 onwards. Runs in one transaction, so a failure leaves the schema as it was.
+BEGIN;
+
+-- Hibernate's unique, foreign key and enum check constraints have generated names
+DO $$
+DECLARE
+    c record;
+BEGIN
+    FOR c IN SELECT conname, conrelid::regclass AS tbl FROM pg_constraint
+             WHERE conrelid IN ('auth_providers'::regclass, 'users'::regclass) AND contype IN ('u', 'f', 'c')
+             ORDER BY contype = 'f' DESC
+    LOOP
+        EXECUTE format('ALTER TABLE %s DROP CONSTRAINT %I', c.tbl, c.conname);
+    END LOOP;
+END $$;
+
+-- provider name -> SMALLINT code (1 = GOOGLE, 2 = GITHUB); any other value fails on the NOT NULL column
+ALTER TABLE auth_providers
+    ALTER COLUMN provider TYPE SMALLINT USING CASE provider WHEN 'GOOGLE' THEN 1 WHEN 'GITHUB' THEN 2 END;
+
+ALTER TABLE users
+    ALTER COLUMN email SET NOT NULL,
+    ALTER COLUMN avatar_url TYPE VARCHAR(1024),
+    ALTER COLUMN bio SET DEFAULT '',
+    ADD CONSTRAINT uk_users_email UNIQUE (email);
+
+ALTER TABLE auth_providers
+    ADD CONSTRAINT uk_auth_providers_identity UNIQUE (provider, provider_user_id) INCLUDE (user_id),
+    ADD FOREIGN KEY (user_id) REFERENCES users (id) ON DELETE CASCADE;
+
+CREATE INDEX ix_auth_providers_user ON auth_providers (user_id, provider);
+
+-- Spring Session store, as in V1
+CREATE TABLE http_sessions (
+    id                   VARCHAR(64) PRIMARY KEY,
+    principal_name       VARCHAR(255),
+    creation_time        BIGINT NOT NULL,
+    last_access_time     BIGINT NOT NULL,
+    max_inactive_seconds INTEGER NOT NULL,
+    expiry_time          BIGINT NOT NULL,
+    attributes           BYTEA
+);
+
+CREATE INDEX ix_http_sessions_expiry ON http_sessions (expiry_time);
+
+COMMIT;
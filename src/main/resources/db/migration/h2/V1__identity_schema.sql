@@ -0,0 +1,40 @@
+-- Users: one row per login identifier (email, or GitHub username); single unique index on email
+CREATE TABLE users (
+    id           BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    email        VARCHAR(255) NOT NULL,
+    display_name VARCHAR(255),
+    avatar_url   VARCHAR(1024),
+    bio          VARCHAR(500) DEFAULT '',
+    created_at   TIMESTAMP(6) WITH TIME ZONE,
+    updated_at   TIMESTAMP(6) WITH TIME ZONE,
+    CONSTRAINT uk_users_email UNIQUE (email)
+);
+
+-- Provider identities. provider is a compact code (1 = GOOGLE, 2 = GITHUB, see AuthProvider.Provider).
+-- H2 has no INCLUDE columns, so the login lookup (provider, provider_user_id) -> user_id gets its own
+-- covering index next to the unique constraint.
+CREATE TABLE auth_providers (
+    id               BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    user_id          BIGINT NOT NULL,
+    provider         SMALLINT NOT NULL,
+    provider_user_id VARCHAR(255) NOT NULL,
+    provider_email   VARCHAR(255),
+    CONSTRAINT uk_auth_providers_identity UNIQUE (provider, provider_user_id),
+    CONSTRAINT fk_auth_providers_user FOREIGN KEY (user_id) REFERENCES users (id) ON DELETE CASCADE
+);
+
+CREATE INDEX ix_auth_providers_lookup ON auth_providers (provider, provider_user_id, user_id);
+CREATE INDEX ix_auth_providers_user ON auth_providers (user_id, provider);
+
+-- Spring Session store (app.session.store=jdbc)
+CREATE TABLE http_sessions (
+    id                   VARCHAR(64) PRIMARY KEY,
+    principal_name       VARCHAR(255),
+    creation_time        BIGINT NOT NULL,
+    last_access_time     BIGINT NOT NULL,
+    max_inactive_seconds INTEGER NOT NULL,
+    expiry_time          BIGINT NOT NULL,
+    attributes           VARBINARY(1000000)
+);
+
+CREATE INDEX ix_http_sessions_expiry ON http_sessions (expiry_time);
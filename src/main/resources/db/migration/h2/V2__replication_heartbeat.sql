@@ -0,0 +1,8 @@
+-- Single row rewritten by every node's replica lag probe (ReplicaRoutingDataSource); replicas are read
+-- back and compared with the current time
+CREATE TABLE replication_heartbeat (
+    id      SMALLINT PRIMARY KEY,
+    beat_at TIMESTAMP(6) WITH TIME ZONE NOT NULL
+);
+
+INSERT INTO replication_heartbeat (id, beat_at) VALUES (1, CURRENT_TIMESTAMP);
@@ -0,0 +1,3 @@
+-- Random value rewritten whenever a session's attributes are saved; a node's near-cache compares it
+-- against its cached copy instead of trusting the copy for the whole cache TTL
+ALTER TABLE http_sessions ADD COLUMN revision BIGINT DEFAULT 0 NOT NULL;
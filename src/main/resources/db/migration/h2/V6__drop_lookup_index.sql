@@ -0,0 +1,3 @@
+-- The unique constraint (provider, provider_user_id) already finds the identity; the extra covering index
+-- only saved reading user_id from the row, at the cost of a third index to maintain on every link
+DROP INDEX ix_auth_providers_lookup;
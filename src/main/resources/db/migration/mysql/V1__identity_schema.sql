@@ -0,0 +1,38 @@
+-- Users: one row per login identifier (email, or GitHub username); single unique index on email
+CREATE TABLE users (
+    id           BIGINT NOT NULL AUTO_INCREMENT PRIMARY KEY,
+    email        VARCHAR(255) NOT NULL,
+    display_name VARCHAR(255),
+    avatar_url   VARCHAR(1024),
+    bio          VARCHAR(500) DEFAULT '',
+    created_at   TIMESTAMP(6) NULL,
+    updated_at   TIMESTAMP(6) NULL,
+    CONSTRAINT uk_users_email UNIQUE (email)
+) ENGINE = InnoDB;
+
+-- Provider identities. provider is a compact code (1 = GOOGLE, 2 = GITHUB, see AuthProvider.Provider).
+-- InnoDB secondary indexes carry the primary key, not user_id, so the login lookup
+-- (provider, provider_user_id) -> user_id gets its own covering index next to the unique key.
+CREATE TABLE auth_providers (
+    id               BIGINT NOT NULL AUTO_INCREMENT PRIMARY KEY,
+    user_id          BIGINT NOT NULL,
+    provider         SMALLINT NOT NULL,
+    provider_user_id VARCHAR(255) NOT NULL,
+    provider_email   VARCHAR(255),
+    CONSTRAINT uk_auth_providers_identity UNIQUE (provider, provider_user_id),
+    INDEX ix_auth_providers_lookup (provider, provider_user_id, user_id),
+    INDEX ix_auth_providers_user (user_id, provider),
+    CONSTRAINT fk_auth_providers_user FOREIGN KEY (user_id) REFERENCES users (id) ON DELETE CASCADE
+) ENGINE = InnoDB;
+
+-- Spring Session store (app.session.store=jdbc)
+CREATE TABLE http_sessions (
+    id                   VARCHAR(64) NOT NULL PRIMARY KEY,
+    principal_name       VARCHAR(255),
+    creation_time        BIGINT NOT NULL,
+    last_access_time     BIGINT NOT NULL,
+    max_inactive_seconds INT NOT NULL,
+    expiry_time          BIGINT NOT NULL,
+    attributes           MEDIUMBLOB,
+    INDEX ix_http_sessions_expiry (expiry_time)
+) ENGINE = InnoDB;
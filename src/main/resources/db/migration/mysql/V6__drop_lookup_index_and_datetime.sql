@@ -0,0 +1,17 @@
+-- The unique key (provider, provider_user_id) already finds the identity; the extra covering index only saved
+-- the clustered-index read for user_id, at the cost of a third index to maintain on every link
+ALTER TABLE auth_providers DROP INDEX ix_auth_providers_lookup;
+
+-- TIMESTAMP stops at 2038-01-19; DATETIME(6) does not. Existing values are converted in the session time zone,
+-- so run this with the time zone the application connects with (connectionTimeZone, UTC recommended)
+ALTER TABLE users
+    MODIFY created_at DATETIME(6) NULL,
+    MODIFY updated_at DATETIME(6) NULL;
+
+ALTER TABLE replication_heartbeat
+    MODIFY beat_at DATETIME(6) NOT NULL;
+
+ALTER TABLE outbox_events
+    MODIFY created_at DATETIME(6) NOT NULL,
+    MODIFY available_at DATETIME(6) NOT NULL,
+    MODIFY claimed_until DATETIME(6) NULL;
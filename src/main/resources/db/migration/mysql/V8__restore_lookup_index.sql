@@ -0,0 +1,3 @@
+-- Puts back the covering index V6 dropped: with user_id in the index, the login lookup
+-- (provider, provider_user_id) -> user_id is answered from the index alone, without the clustered-index read
+CREATE INDEX ix_auth_providers_lookup ON auth_providers (provider, provider_user_id, user_id);
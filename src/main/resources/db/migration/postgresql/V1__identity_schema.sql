@@ -0,0 +1,38 @@
+-- Users: one row per login identifier (email, or GitHub username); single unique index on email
+CREATE TABLE users (
+    id           BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    email        VARCHAR(255) NOT NULL,
+    display_name VARCHAR(255),
+    avatar_url   VARCHAR(1024),
+    bio          VARCHAR(500) DEFAULT '',
+    created_at   TIMESTAMP(6) WITH TIME ZONE,
+    updated_at   TIMESTAMP(6) WITH TIME ZONE,
+    CONSTRAINT uk_users_email UNIQUE (email)
+);
+
+-- Provider identities. provider is a compact code (1 = GOOGLE, 2 = GITHUB, see AuthProvider.Provider).
+-- The login lookup (provider, provider_user_id) -> user_id is answered from the unique index alone.
+CREATE TABLE auth_providers (
+    id               BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    user_id          BIGINT NOT NULL REFERENCES users (id) ON DELETE CASCADE,
+    provider         SMALLINT NOT NULL,
+    provider_user_id VARCHAR(255) NOT NULL,
+    provider_email   VARCHAR(255),
+    CONSTRAINT uk_auth_providers_identity UNIQUE (provider, provider_user_id) INCLUDE (user_id)
+);
+
+-- "Which providers does this user have": also backs the foreign key
+CREATE INDEX ix_auth_providers_user ON auth_providers (user_id, provider);
+
+-- Spring Session store (app.session.store=jdbc)
+CREATE TABLE http_sessions (
+    id                   VARCHAR(64) PRIMARY KEY,
+    principal_name       VARCHAR(255),
+    creation_time        BIGINT NOT NULL,
+    last_access_time     BIGINT NOT NULL,
+    max_inactive_seconds INTEGER NOT NULL,
+    expiry_time          BIGINT NOT NULL,
+    attributes           BYTEA
+);
+
+CREATE INDEX ix_http_sessions_expiry ON http_sessions (expiry_time);
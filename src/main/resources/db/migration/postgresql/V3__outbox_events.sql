@@ -0,0 +1,19 @@
+-- Transactional outbox: identity events written in the provisioning transaction and processed by
+-- OutboxDispatcher. status 0 = pending, 2 = dead (gave up after app.outbox.max-attempts); processed rows
+-- are deleted. A claim is a lease: rows whose claimed_until has passed can be claimed again.
+CREATE TABLE outbox_events (
+    id            BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    event_type    VARCHAR(40) NOT NULL,
+    user_id       BIGINT NOT NULL,
+    payload       VARCHAR(4000) NOT NULL,
+    status        SMALLINT DEFAULT 0 NOT NULL,
+    attempts      INTEGER DEFAULT 0 NOT NULL,
+    created_at    TIMESTAMP(6) WITH TIME ZONE NOT NULL,
+    available_at  TIMESTAMP(6) WITH TIME ZONE NOT NULL,
+    claimed_by    VARCHAR(64),
+    claimed_until TIMESTAMP(6) WITH TIME ZONE,
+    last_error    VARCHAR(500)
+);
+
+CREATE INDEX ix_outbox_events_due ON outbox_events (status, available_at, id);
+CREATE INDEX ix_outbox_events_claim ON outbox_events (claimed_by);
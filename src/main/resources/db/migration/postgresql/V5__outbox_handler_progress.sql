@@ -0,0 +1,2 @@
+-- Handlers that already succeeded for an event (comma-separated names), so a retry only re-runs the failed ones
+ALTER TABLE outbox_events ADD COLUMN completed_handlers VARCHAR(400);
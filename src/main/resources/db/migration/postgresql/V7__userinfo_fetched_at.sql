@@ -0,0 +1,2 @@
+-- When the provider's user-info endpoint was last called for this identity (app.oidc.userinfo.max-age)
+ALTER TABLE auth_providers ADD COLUMN userinfo_fetched_at TIMESTAMP(6) WITH TIME ZONE;
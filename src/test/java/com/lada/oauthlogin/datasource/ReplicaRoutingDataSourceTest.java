@@ -0,0 +1,150 @@
+package com.lada.oauthlogin.datasource;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/** Routing against throwaway in-memory H2 databases whose heartbeat rows the tests set by hand. */
+class ReplicaRoutingDataSourceTest {
+
+    private final DataSource primary = database(true);
+    private final DataSource fresh = database(true);
+    private final DataSource lagging = database(true);
+
+    private final ReadYourWrites readYourWrites = new ReadYourWrites(List.of("jdbc:replica"), Duration.ofHours(1), 100);
+
+    @AfterEach
+    void clearBinding() {
+        readYourWrites.restore(null);
+    }
+
+    private static DataSource database(boolean withHeartbeat) {
+        DataSource ds = new DriverManagerDataSource("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        if (withHeartbeat) {
+            JdbcTemplate jdbc = new JdbcTemplate(ds);
+            jdbc.execute("CREATE TABLE replication_heartbeat (id SMALLINT PRIMARY KEY, beat_at TIMESTAMP(6) WITH TIME ZONE NOT NULL)");
+            jdbc.update("INSERT INTO replication_heartbeat (id, beat_at) VALUES (1, CURRENT_TIMESTAMP)");
+        }
+        return ds;
+    }
+
+    private static void beatAgo(DataSource replica, Duration ago) {
+        new JdbcTemplate(replica).update("UPDATE replication_heartbeat SET beat_at = ? WHERE id = 1",
+                OffsetDateTime.now(ZoneOffset.UTC).minus(ago));
+    }
+
+    private ReplicaRoutingDataSource routing(DataSource... replicas) {
+        ReplicaRoutingDataSource routing = new ReplicaRoutingDataSource(primary, List.of(replicas), Duration.ofSeconds(5));
+        routing.afterPropertiesSet();
+        return routing;
+    }
+
+    @Test
+    void usesThePrimaryUntilTheFirstProbe() {
+        ReplicaRoutingDataSource routing = routing(fresh);
+
+        assertThat(routing.determineCurrentLookupKey()).isEqualTo(ReplicaRoutingDataSource.PRIMARY);
+        assertThat(routing.fallbackReads()).isEqualTo(1);
+    }
+
+    @Test
+    void roundRobinsOverHealthyReplicasAndSkipsLaggingOnes() {
+        DataSource secondFresh = database(true);
+        beatAgo(lagging, Duration.ofMinutes(1));
+        ReplicaRoutingDataSource routing = routing(fresh, lagging, secondFresh);
+
+        routing.probe();
+
+        assertThat(routing.replicas()).extracting(ReplicaRoutingDataSource.Replica::healthy)
+                .containsExactly(true, false, true);
+        assertThat(routing.replicas().get(1).lagMillis()).isGreaterThanOrEqualTo(Duration.ofMinutes(1).toMillis());
+        Set<Object> keys = new HashSet<>();
+        for (int i = 0; i < 6; i++) {
+            keys.add(routing.determineCurrentLookupKey());
+        }
+        assertThat(keys).containsExactlyInAnyOrder("replica-0", "replica-2");
+        assertThat(routing.replicaReads()).isEqualTo(6);
+    }
+
+    @Test
+    void fallsBackToThePrimaryWhenNoReplicaIsUsable() {
+        beatAgo(lagging, Duration.ofMinutes(1));
+        ReplicaRoutingDataSource routing = routing(lagging, database(false));
+
+        routing.probe();
+
+        assertThat(routing.replicas()).noneMatch(ReplicaRoutingDataSource.Replica::healthy);
+        assertThat(routing.replicas().get(1).lagMillis()).isEqualTo(-1);
+        assertThat(routing.determineCurrentLookupKey()).isEqualTo(ReplicaRoutingDataSource.PRIMARY);
+        assertThat(routing.fallbackReads()).isEqualTo(1);
+    }
+
+    @Test
+    void replicaComesBackOnceItCatchesUp() {
+        beatAgo(lagging, Duration.ofMinutes(1));
+        ReplicaRoutingDataSource routing = routing(lagging);
+        routing.probe();
+        assertThat(routing.replicas().get(0).healthy()).isFalse();
+
+        beatAgo(lagging, Duration.ZERO);
+        routing.probe();
+
+        assertThat(routing.determineCurrentLookupKey()).isEqualTo("replica-0");
+    }
+
+    @Test
+    void recentWritersReadFromThePrimary() {
+        ReplicaRoutingDataSource routing = routing(fresh);
+        routing.probe();
+
+        readYourWrites.bind(7L);
+        assertThat(routing.determineCurrentLookupKey()).isEqualTo("replica-0");
+
+        readYourWrites.wrote(7L);
+        assertThat(routing.determineCurrentLookupKey()).isEqualTo(ReplicaRoutingDataSource.PRIMARY);
+        readYourWrites.restore(null);
+
+        // A later request by the same user is still sticky; another user is not
+        readYourWrites.bind(7L);
+        assertThat(routing.determineCurrentLookupKey()).isEqualTo(ReplicaRoutingDataSource.PRIMARY);
+        readYourWrites.restore(null);
+        readYourWrites.bind(8L);
+        assertThat(routing.determineCurrentLookupKey()).isEqualTo("replica-0");
+        assertThat(routing.stickyReads()).isEqualTo(2);
+    }
+
+    @Test
+    void writingPinsTheWorkToThePrimaryAndRestoresTheBinding() {
+        ReplicaRoutingDataSource routing = routing(fresh);
+        routing.probe();
+
+        Object inside = readYourWrites.writing(9L, routing::determineCurrentLookupKey);
+
+        assertThat(inside).isEqualTo(ReplicaRoutingDataSource.PRIMARY);
+        assertThat(ReadYourWrites.primaryRequired()).isFalse();
+        assertThat(readYourWrites.trackedUsers()).isEqualTo(1);
+    }
+
+    @Test
+    void withoutReplicasNothingIsSticky() {
+        ReadYourWrites disabled = new ReadYourWrites(List.of(""), Duration.ofHours(1), 100);
+
+        disabled.wrote(7L);
+        disabled.bind(7L);
+
+        assertThat(ReadYourWrites.primaryRequired()).isFalse();
+        assertThat(disabled.trackedUsers()).isZero();
+    }
+}
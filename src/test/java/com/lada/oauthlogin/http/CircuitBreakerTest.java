@@ -0,0 +1,84 @@
+package com.lada.oauthlogin.http;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CircuitBreakerTest {
+
+    private static final long SECOND = Duration.ofSeconds(1).toNanos();
+
+    private final AtomicLong clock = new AtomicLong(1_000 * SECOND);
+    private final CircuitBreaker breaker = new CircuitBreaker(3, Duration.ofSeconds(30), clock::get);
+
+    private void fail(int times) {
+        for (int i = 0; i < times; i++) {
+            assertThat(breaker.tryAcquire()).isTrue();
+            breaker.onFailure();
+        }
+    }
+
+    @Test
+    void opensAfterConsecutiveFailures() {
+        fail(2);
+        assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.CLOSED);
+
+        fail(1);
+
+        assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThat(breaker.tryAcquire()).isFalse();
+    }
+
+    @Test
+    void successResetsTheFailureCount() {
+        fail(2);
+        breaker.tryAcquire();
+        breaker.onSuccess();
+        fail(2);
+
+        assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    void letsOneTrialThroughAfterTheOpenDuration() {
+        fail(3);
+        clock.addAndGet(29 * SECOND);
+        assertThat(breaker.tryAcquire()).isFalse();
+
+        clock.addAndGet(SECOND);
+        assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+        assertThat(breaker.tryAcquire()).isTrue();
+        // Only one trial at a time
+        assertThat(breaker.tryAcquire()).isFalse();
+    }
+
+    @Test
+    void successfulTrialClosesTheCircuit() {
+        fail(3);
+        clock.addAndGet(30 * SECOND);
+        assertThat(breaker.tryAcquire()).isTrue();
+
+        breaker.onSuccess();
+
+        assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.CLOSED);
+        assertThat(breaker.tryAcquire()).isTrue();
+    }
+
+    @Test
+    void failedTrialOpensTheCircuitAgainForTheFullDuration() {
+        fail(3);
+        clock.addAndGet(30 * SECOND);
+        assertThat(breaker.tryAcquire()).isTrue();
+
+        breaker.onFailure();
+
+        assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.OPEN);
+        clock.addAndGet(29 * SECOND);
+        assertThat(breaker.tryAcquire()).isFalse();
+        clock.addAndGet(SECOND);
+        assertThat(breaker.tryAcquire()).isTrue();
+    }
+}
@@ -0,0 +1,89 @@
+package com.lada.oauthlogin.http;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.convert.ApplicationConversionService;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.mock.http.client.MockClientHttpRequest;
+import org.springframework.mock.http.client.MockClientHttpResponse;
+import org.springframework.security.config.oauth2.client.CommonOAuth2Provider;
+import org.springframework.security.oauth2.client.registration.InMemoryClientRegistrationRepository;
+
+import java.io.IOException;
+import java.net.URI;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ProviderHttpClientsTest {
+
+    private static final URI TOKEN_URI = URI.create("https://github.com/login/oauth/access_token");
+
+    // One permit per provider, and no waiting for it
+    private final ProviderHttpClients clients = new ProviderHttpClients(
+            new InMemoryClientRegistrationRepository(CommonOAuth2Provider.GITHUB.getBuilder("github").clientId("id").build()),
+            environment());
+
+    private final ClientHttpRequestInterceptor guard = clients.guard();
+
+    private static MockEnvironment environment() {
+        MockEnvironment env = new MockEnvironment()
+                .withProperty("app.http.max-concurrent", "1")
+                .withProperty("app.http.acquire-timeout", "1ms");
+        // Durations like "1ms", as in a Boot application context
+        env.setConversionService(new ApplicationConversionService());
+        return env;
+    }
+
+    private ProviderHttpClients.Provider github() {
+        return clients.providers().stream().filter(p -> p.name().equals("github")).findFirst().orElseThrow();
+    }
+
+    private ClientHttpResponse send(HttpStatus status) throws IOException {
+        MockClientHttpRequest request = new MockClientHttpRequest(HttpMethod.POST, TOKEN_URI);
+        return guard.intercept(request, new byte[0], (r, body) -> new MockClientHttpResponse(new byte[] {1}, status));
+    }
+
+    @Test
+    void permitIsHeldUntilTheResponseIsClosed() throws IOException {
+        ClientHttpResponse response = send(HttpStatus.OK);
+        response.getBody().readAllBytes();
+
+        assertThat(github().inFlight()).isEqualTo(1);
+        assertThatThrownBy(() -> send(HttpStatus.OK)).isInstanceOf(IOException.class)
+                .hasMessageContaining("Too many concurrent requests");
+        assertThat(github().rejectedBusy()).isEqualTo(1);
+
+        response.close();
+        response.close();
+
+        assertThat(github().inFlight()).isZero();
+        send(HttpStatus.OK).close();
+        assertThat(github().inFlight()).isZero();
+    }
+
+    @Test
+    void failedExchangeReleasesThePermitAtOnce() {
+        MockClientHttpRequest request = new MockClientHttpRequest(HttpMethod.POST, TOKEN_URI);
+
+        assertThatThrownBy(() -> guard.intercept(request, new byte[0], (r, body) -> {
+            throw new IOException("connection reset");
+        })).hasMessage("connection reset");
+
+        assertThat(github().inFlight()).isZero();
+    }
+
+    @Test
+    void serverErrorsCountTowardsTheBreaker() throws IOException {
+        for (int i = 0; i < 5; i++) {
+            send(HttpStatus.BAD_GATEWAY).close();
+        }
+
+        assertThat(github().circuitState()).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThatThrownBy(() -> send(HttpStatus.OK)).hasMessageContaining("Circuit open");
+        assertThat(github().inFlight()).isZero();
+    }
+}
@@ -0,0 +1,162 @@
+package com.lada.oauthlogin.load;
+
+import com.lada.oauthlogin.support.ProviderEmulator;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Drives complete browser-style oauth2Login flows (authorization redirect, provider callback, token exchange,
+ * user-info / ID token, then {@code /profile-data}) against the local {@link ProviderEmulator}, alternating
+ * GitHub and Google. Run with: mvn -Pload-test test -Dload.flows=5000 -Dload.concurrency=500
+ */
+@Tag("load")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "spring.datasource.url=jdbc:h2:mem:flowload;DB_CLOSE_DELAY=-1",
+        "server.tomcat.threads.max=400",
+        // Every virtual user comes from 127.0.0.1; this test measures the login path, not admission control
+        "app.ratelimit.enabled=false"
+})
+class FullLoginFlowLoadTest {
+
+    private static final int FLOWS = Integer.getInteger("load.flows", 2000);
+    private static final int CONCURRENCY = Integer.getInteger("load.concurrency", 200);
+    // Fewer distinct users than flows, so the run mixes first logins, returning logins and account linking
+    private static final int USERS = Integer.getInteger("load.users", FLOWS / 2);
+    private static final Duration PROVIDER_LATENCY = Duration.ofMillis(Long.getLong("load.provider-latency-ms", 50));
+
+    private static final ProviderEmulator emulator = startEmulator();
+
+    @DynamicPropertySource
+    static void provider(DynamicPropertyRegistry registry) {
+        emulator.clientProperties().forEach((key, value) -> registry.add(key, () -> value));
+    }
+
+    @AfterAll
+    static void stopEmulator() {
+        emulator.close();
+    }
+
+    @LocalServerPort
+    int port;
+
+    private final HttpClient http = HttpClient.newBuilder()
+            .followRedirects(HttpClient.Redirect.NEVER)
+            .connectTimeout(Duration.ofSeconds(5))
+            .executor(Executors.newVirtualThreadPerTaskExecutor())
+            .build();
+
+    @Test
+    void concurrentLoginFlows() throws Exception {
+        long[] latencies = new long[FLOWS];
+        AtomicInteger next = new AtomicInteger();
+        // Failure type -> count and the first message of that type
+        Map<String, LongAdder> failures = new ConcurrentHashMap<>();
+        Map<String, String> firstMessage = new ConcurrentHashMap<>();
+
+        long start = System.nanoTime();
+        try (ExecutorService users = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int u = 0; u < CONCURRENCY; u++) {
+                users.submit(() -> {
+                    for (int i = next.getAndIncrement(); i < FLOWS; i = next.getAndIncrement()) {
+                        long t0 = System.nanoTime();
+                        try {
+                            loginFlow(i % 2 == 0 ? "github" : "google");
+                        } catch (Exception | AssertionError e) {
+                            String type = e.getClass().getSimpleName();
+                            failures.computeIfAbsent(type, t -> new LongAdder()).increment();
+                            firstMessage.putIfAbsent(type, String.valueOf(e.getMessage()).lines().findFirst().orElse(""));
+                        }
+                        latencies[i] = System.nanoTime() - t0;
+                    }
+                });
+            }
+        }
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+        Arrays.sort(latencies);
+        long failed = failures.values().stream().mapToLong(LongAdder::sum).sum();
+        System.out.printf("flows=%d concurrency=%d users=%d failures=%d elapsed=%dms throughput=%.0f/s "
+                        + "p50=%.1fms p95=%.1fms p99=%.1fms max=%.1fms%n",
+                FLOWS, CONCURRENCY, USERS, failed, elapsed.toMillis(), FLOWS / (elapsed.toNanos() / 1e9),
+                percentile(latencies, 0.50), percentile(latencies, 0.95), percentile(latencies, 0.99),
+                latencies[FLOWS - 1] / 1e6);
+        failures.forEach((type, count) ->
+                System.out.printf("  failed %s x%d, first: %s%n", type, count.sum(), firstMessage.get(type)));
+
+        assertThat(failed).isZero();
+    }
+
+    // One virtual user with its own cookie jar; every hop is asserted so a broken flow counts as a failure
+    private void loginFlow(String registrationId) throws IOException, InterruptedException {
+        Map<String, String> cookies = new LinkedHashMap<>();
+        URI app = URI.create("http://127.0.0.1:" + port);
+
+        URI authorize = redirect(send(app.resolve("/oauth2/authorization/" + registrationId), cookies));
+        URI callback = redirect(send(authorize, null));
+        URI landing = redirect(send(callback, cookies));
+        assertThat(landing.getPath()).isEqualTo("/profile.html");
+
+        HttpResponse<String> profile = send(app.resolve("/profile-data"), cookies);
+        assertThat(profile.statusCode()).isEqualTo(200);
+        assertThat(profile.body()).contains("loaduser");
+    }
+
+    private HttpResponse<String> send(URI uri, Map<String, String> cookies) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder(uri).timeout(Duration.ofSeconds(30)).GET();
+        if (cookies != null && !cookies.isEmpty()) {
+            request.header("Cookie", cookies.entrySet().stream()
+                    .map(c -> c.getKey() + "=" + c.getValue())
+                    .collect(Collectors.joining("; ")));
+        }
+        HttpResponse<String> response = http.send(request.build(), HttpResponse.BodyHandlers.ofString());
+        if (cookies != null) {
+            for (String header : response.headers().allValues("Set-Cookie")) {
+                String pair = header.split(";", 2)[0];
+                int eq = pair.indexOf('=');
+                cookies.put(pair.substring(0, eq).trim(), pair.substring(eq + 1).trim());
+            }
+        }
+        return response;
+    }
+
+    private static URI redirect(HttpResponse<String> response) {
+        assertThat(response.statusCode()).as("redirect from %s", response.uri()).isEqualTo(302);
+        String location = response.headers().firstValue("Location").orElseThrow();
+        return response.uri().resolve(location);
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * p))] / 1e6;
+    }
+
+    private static ProviderEmulator startEmulator() {
+        try {
+            return new ProviderEmulator(PROVIDER_LATENCY, USERS);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
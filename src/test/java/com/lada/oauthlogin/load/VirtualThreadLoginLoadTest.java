@@ -0,0 +1,103 @@
+package com.lada.oauthlogin.load;
+
+import com.lada.oauthlogin.service.CustomOAuth2UserService;
+import com.lada.oauthlogin.support.ProviderEmulator;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.client.registration.ClientRegistrationRepository;
+import org.springframework.security.oauth2.client.userinfo.OAuth2UserRequest;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Drives concurrent first-time GitHub logins through CustomOAuth2UserService on virtual threads,
+ * against the emulated GitHub user-info endpoint with 100 ms latency. Run with: mvn -Pload-test test
+ */
+@Tag("load")
+@ActiveProfiles("virtual")
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:loadtest;DB_CLOSE_DELAY=-1",
+        "spring.security.oauth2.client.registration.github.client-id=load-test",
+        "spring.security.oauth2.client.registration.github.client-secret=load-test"
+})
+class VirtualThreadLoginLoadTest {
+
+    private static final int LOGINS = Integer.getInteger("load.logins", 5000);
+
+    private static final ProviderEmulator emulator = startEmulator();
+
+    @DynamicPropertySource
+    static void provider(DynamicPropertyRegistry registry) {
+        registry.add("spring.security.oauth2.client.provider.github.user-info-uri", () -> emulator.baseUrl() + "/github/user");
+    }
+
+    @AfterAll
+    static void stopEmulator() {
+        emulator.close();
+    }
+
+    @Autowired
+    CustomOAuth2UserService userService;
+
+    @Autowired
+    ClientRegistrationRepository registrations;
+
+    @Test
+    void concurrentFirstLogins() throws Exception {
+        ClientRegistration github = registrations.findByRegistrationId("github");
+        long[] latencies = new long[LOGINS];
+        List<Future<?>> futures = new ArrayList<>(LOGINS);
+
+        long start = System.nanoTime();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < LOGINS; i++) {
+                int n = i;
+                futures.add(executor.submit(() -> {
+                    OAuth2AccessToken token = new OAuth2AccessToken(OAuth2AccessToken.TokenType.BEARER,
+                            "tok-" + n, Instant.now(), Instant.now().plusSeconds(60));
+                    long t0 = System.nanoTime();
+                    userService.loadUser(new OAuth2UserRequest(github, token));
+                    latencies[n] = System.nanoTime() - t0;
+                }));
+            }
+            for (Future<?> f : futures) {
+                f.get();
+            }
+        }
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+        Arrays.sort(latencies);
+        System.out.printf("logins=%d elapsed=%dms throughput=%.0f/s p50=%.1fms p99=%.1fms max=%.1fms%n",
+                LOGINS, elapsed.toMillis(), LOGINS / (elapsed.toNanos() / 1e9),
+                latencies[LOGINS / 2] / 1e6, latencies[(int) (LOGINS * 0.99)] / 1e6, latencies[LOGINS - 1] / 1e6);
+
+        // With platform threads this would be bounded by pool size x 100 ms; virtual threads overlap the waits
+        assertThat(elapsed).isLessThan(Duration.ofMillis(100L * LOGINS / 50));
+    }
+
+    private static ProviderEmulator startEmulator() {
+        try {
+            return new ProviderEmulator(Duration.ofMillis(100));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package com.lada.oauthlogin.outbox;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+/** Not transactional: the dispatcher updates rows from its handler threads, on their own connections. */
+@JdbcTest(properties = "spring.flyway.locations=classpath:db/migration/{vendor}")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class OutboxDispatcherTest {
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    private OutboxDispatcher dispatcher;
+
+    @AfterEach
+    void cleanUp() {
+        if (dispatcher != null) {
+            dispatcher.shutdown();
+        }
+        jdbcTemplate.update("DELETE FROM outbox_events");
+    }
+
+    static class Recording implements OutboxHandler {
+        final AtomicInteger calls = new AtomicInteger();
+
+        @Override
+        public Set<OutboxEvent.Type> types() {
+            return Set.of(OutboxEvent.Type.USER_CREATED);
+        }
+
+        @Override
+        public void handle(OutboxEvent event) {
+            calls.incrementAndGet();
+        }
+    }
+
+    // Fails the first `failures` deliveries
+    static class Flaky implements OutboxHandler {
+        final AtomicInteger calls = new AtomicInteger();
+        final int failures;
+
+        Flaky(int failures) {
+            this.failures = failures;
+        }
+
+        @Override
+        public Set<OutboxEvent.Type> types() {
+            return Set.of(OutboxEvent.Type.USER_CREATED);
+        }
+
+        @Override
+        public void handle(OutboxEvent event) {
+            if (calls.incrementAndGet() <= failures) {
+                throw new IllegalStateException("provider down");
+            }
+        }
+    }
+
+    private OutboxDispatcher dispatcher(int maxAttempts, OutboxHandler... handlers) {
+        dispatcher = new OutboxDispatcher(jdbcTemplate, new ObjectMapper(), List.of(handlers), true,
+                10, 1, 2, maxAttempts, Duration.ofMinutes(1), Duration.ofSeconds(30), Duration.ofMinutes(5),
+                Duration.ofSeconds(5));
+        return dispatcher;
+    }
+
+    private long insert(String type) {
+        return insert(type, "{\"email\":\"octo\"}");
+    }
+
+    private long insert(String type, String payload) {
+        OffsetDateTime now = OffsetDateTime.now(ZoneOffset.UTC);
+        jdbcTemplate.update("""
+                INSERT INTO outbox_events (event_type, user_id, payload, status, attempts, created_at, available_at)
+                VALUES (?, 7, ?, 0, 0, ?, ?)
+                """, type, payload, now, now);
+        return jdbcTemplate.queryForObject("SELECT MAX(id) FROM outbox_events", Long.class);
+    }
+
+    private Map<String, Object> row(long id) {
+        return jdbcTemplate.queryForMap("SELECT * FROM outbox_events WHERE id = ?", id);
+    }
+
+    private int status(long id) {
+        return jdbcTemplate.queryForObject("SELECT status FROM outbox_events WHERE id = ?", Integer.class, id);
+    }
+
+    private void makeDue(long id) {
+        jdbcTemplate.update("UPDATE outbox_events SET available_at = ? WHERE id = ?",
+                OffsetDateTime.now(ZoneOffset.UTC).minusSeconds(1), id);
+    }
+
+    @Test
+    void deliversAndDeletesDueEvents() {
+        Recording handler = new Recording();
+        OutboxDispatcher dispatcher = dispatcher(3, handler);
+        insert("user_created");
+        insert("user_created");
+
+        dispatcher.poll();
+
+        assertThat(handler.calls).hasValue(2);
+        assertThat(dispatcher.delivered()).isEqualTo(2);
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM outbox_events", Long.class)).isZero();
+    }
+
+    @Test
+    void failureIsRescheduledWithBackoffAndReleasesTheClaim() {
+        Flaky handler = new Flaky(1);
+        OutboxDispatcher dispatcher = dispatcher(3, handler);
+        long id = insert("user_created");
+
+        dispatcher.poll();
+
+        Map<String, Object> row = row(id);
+        assertThat(status(id)).isEqualTo(OutboxDispatcher.PENDING);
+        assertThat(row.get("ATTEMPTS")).isEqualTo(1);
+        assertThat(row.get("CLAIMED_BY")).isNull();
+        assertThat((String) row.get("LAST_ERROR")).contains("provider down");
+        assertThat(jdbcTemplate.queryForObject("SELECT available_at FROM outbox_events WHERE id = ?",
+                OffsetDateTime.class, id)).isAfter(OffsetDateTime.now(ZoneOffset.UTC).plusSeconds(25));
+        assertThat(dispatcher.retried()).isEqualTo(1);
+
+        // Not due again until the backoff has passed
+        dispatcher.poll();
+        assertThat(handler.calls).hasValue(1);
+
+        makeDue(id);
+        dispatcher.poll();
+        assertThat(handler.calls).hasValue(2);
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM outbox_events", Long.class)).isZero();
+    }
+
+    @Test
+    void givesUpAfterMaxAttempts() {
+        OutboxDispatcher dispatcher = dispatcher(2, new Flaky(Integer.MAX_VALUE));
+        long id = insert("user_created");
+
+        dispatcher.poll();
+        makeDue(id);
+        dispatcher.poll();
+
+        assertThat(status(id)).isEqualTo(OutboxDispatcher.DEAD);
+        assertThat(row(id).get("ATTEMPTS")).isEqualTo(2);
+        assertThat(dispatcher.deadLettered()).isEqualTo(1);
+        assertThat(dispatcher.dead()).isEqualTo(1);
+        assertThat(dispatcher.pending()).isZero();
+    }
+
+    @Test
+    void retryOnlyRunsTheHandlersThatHaveNotSucceeded() {
+        Recording recording = new Recording();
+        Flaky flaky = new Flaky(1);
+        OutboxDispatcher dispatcher = dispatcher(3, recording, flaky);
+        long id = insert("user_created");
+
+        dispatcher.poll();
+        assertThat(row(id).get("COMPLETED_HANDLERS")).isEqualTo("Recording");
+
+        makeDue(id);
+        dispatcher.poll();
+
+        assertThat(recording.calls).hasValue(1);
+        assertThat(flaky.calls).hasValue(2);
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM outbox_events", Long.class)).isZero();
+    }
+
+    @Test
+    void unknownTypeIsDeadLetteredWithoutBlockingTheBatch() {
+        Recording handler = new Recording();
+        OutboxDispatcher dispatcher = dispatcher(3, handler);
+        long unknown = insert("account_merged");
+        insert("user_created");
+
+        dispatcher.poll();
+
+        assertThat(handler.calls).hasValue(1);
+        assertThat(status(unknown)).isEqualTo(OutboxDispatcher.DEAD);
+        assertThat((String) row(unknown).get("LAST_ERROR")).contains("account_merged");
+        assertThat(dispatcher.deadLettered()).isEqualTo(1);
+    }
+
+    @Test
+    void unreadablePayloadIsDeadLetteredWithoutRunningHandlers() {
+        Recording handler = new Recording();
+        OutboxDispatcher dispatcher = dispatcher(3, handler);
+        long broken = insert("user_created", "{not json");
+        insert("user_created");
+
+        dispatcher.poll();
+
+        assertThat(handler.calls).hasValue(1);
+        assertThat(status(broken)).isEqualTo(OutboxDispatcher.DEAD);
+        assertThat(row(broken).get("ATTEMPTS")).isEqualTo(1);
+        assertThat((String) row(broken).get("LAST_ERROR")).contains("Unreadable payload");
+        assertThat(dispatcher.retried()).isZero();
+    }
+
+    @Test
+    void pollAfterShutdownReturnsWithoutClaiming() {
+        Recording handler = new Recording();
+        OutboxDispatcher dispatcher = dispatcher(3, handler);
+        long id = insert("user_created");
+
+        dispatcher.shutdown();
+        assertTimeoutPreemptively(Duration.ofSeconds(5), dispatcher::poll);
+
+        assertThat(handler.calls).hasValue(0);
+        assertThat(status(id)).isEqualTo(OutboxDispatcher.PENDING);
+        assertThat(row(id).get("CLAIMED_BY")).isNull();
+    }
+
+    @Test
+    void leaseHeldByAnotherNodeIsSkippedUntilItExpires() {
+        Recording handler = new Recording();
+        OutboxDispatcher dispatcher = dispatcher(3, handler);
+        long id = insert("user_created");
+        jdbcTemplate.update("UPDATE outbox_events SET claimed_by = 'other-node:1', claimed_until = ? WHERE id = ?",
+                OffsetDateTime.now(ZoneOffset.UTC).plusMinutes(1), id);
+
+        dispatcher.poll();
+        assertThat(handler.calls).hasValue(0);
+
+        jdbcTemplate.update("UPDATE outbox_events SET claimed_until = ? WHERE id = ?",
+                OffsetDateTime.now(ZoneOffset.UTC).minusSeconds(1), id);
+        dispatcher.poll();
+        assertThat(handler.calls).hasValue(1);
+    }
+}
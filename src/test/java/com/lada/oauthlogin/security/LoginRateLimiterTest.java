@@ -0,0 +1,159 @@
+package com.lada.oauthlogin.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LoginRateLimiterTest {
+
+    private static final long SECOND = Duration.ofSeconds(1).toNanos();
+
+    private final AtomicLong clock = new AtomicLong(1_000 * SECOND);
+
+    // One permit per second per IP with a burst of 3; the provider limit is out of the way unless a test sets it
+    private LoginRateLimiter limiter(int ipBurst, LoginRateLimiter.Limit providerLimit, int maxTrackedIps) {
+        return new LoginRateLimiter(true, new LoginRateLimiter.Limit(10, Duration.ofSeconds(10), ipBurst),
+                providerLimit, maxTrackedIps, clock::get, List.of("github", "google"));
+    }
+
+    private LoginRateLimiter limiter() {
+        return limiter(3, new LoginRateLimiter.Limit(1_000_000, Duration.ofSeconds(1), 1_000_000), 100);
+    }
+
+    @Test
+    void admitsBurstThenRejectsWithWaitUntilNextPermit() {
+        LoginRateLimiter limiter = limiter();
+
+        assertThat(limiter.tryAcquire("10.0.0.1", "github")).isZero();
+        assertThat(limiter.tryAcquire("10.0.0.1", "github")).isZero();
+        assertThat(limiter.tryAcquire("10.0.0.1", "github")).isZero();
+        assertThat(limiter.tryAcquire("10.0.0.1", "github")).isEqualTo(SECOND);
+        assertThat(limiter.rejectedIp()).isEqualTo(1);
+    }
+
+    @Test
+    void refillsAtTheConfiguredRate() {
+        LoginRateLimiter limiter = limiter();
+        for (int i = 0; i < 3; i++) {
+            limiter.tryAcquire("10.0.0.1", "github");
+        }
+
+        clock.addAndGet(SECOND);
+        assertThat(limiter.tryAcquire("10.0.0.1", "github")).isZero();
+        assertThat(limiter.tryAcquire("10.0.0.1", "github")).isPositive();
+
+        // Idle long enough to refill completely, but never beyond the burst
+        clock.addAndGet(60 * SECOND);
+        for (int i = 0; i < 3; i++) {
+            assertThat(limiter.tryAcquire("10.0.0.1", "github")).isZero();
+        }
+        assertThat(limiter.tryAcquire("10.0.0.1", "github")).isPositive();
+    }
+
+    @Test
+    void ipBucketsAreIndependent() {
+        LoginRateLimiter limiter = limiter();
+        for (int i = 0; i < 3; i++) {
+            limiter.tryAcquire("10.0.0.1", "github");
+        }
+
+        assertThat(limiter.tryAcquire("10.0.0.1", "github")).isPositive();
+        assertThat(limiter.tryAcquire("10.0.0.2", "github")).isZero();
+    }
+
+    @Test
+    void unknownRegistrationIdsShareOneProviderBucket() {
+        // Two permits per second per provider, no burst beyond that
+        LoginRateLimiter limiter = limiter(100, new LoginRateLimiter.Limit(2, Duration.ofSeconds(1), 2), 100);
+
+        assertThat(limiter.tryAcquire("10.0.0.1", "unknown-a")).isZero();
+        assertThat(limiter.tryAcquire("10.0.0.2", "unknown-b")).isZero();
+        assertThat(limiter.tryAcquire("10.0.0.3", "unknown-c")).isPositive();
+        assertThat(limiter.rejectedProvider()).isEqualTo(1);
+
+        // Configured registrations keep their own buckets
+        assertThat(limiter.tryAcquire("10.0.0.4", "github")).isZero();
+        assertThat(limiter.tryAcquire("10.0.0.5", "google")).isZero();
+    }
+
+    @Test
+    void sweepRemovesOnlyRefilledBuckets() {
+        LoginRateLimiter limiter = limiter();
+        for (int i = 0; i < 3; i++) {
+            limiter.tryAcquire("10.0.0.1", "github");
+        }
+        limiter.tryAcquire("10.0.0.2", "github");
+        assertThat(limiter.trackedIps()).isEqualTo(2);
+
+        clock.addAndGet(SECOND);
+        limiter.sweep();
+        assertThat(limiter.trackedIps()).isEqualTo(1);
+
+        clock.addAndGet(2 * SECOND);
+        limiter.sweep();
+        assertThat(limiter.trackedIps()).isZero();
+    }
+
+    @Test
+    void failsOpenPerIpWhenTheMapIsFull() {
+        LoginRateLimiter limiter = limiter(3, new LoginRateLimiter.Limit(1_000_000, Duration.ofSeconds(1), 1_000_000), 1);
+        limiter.tryAcquire("10.0.0.1", "github");
+
+        for (int i = 0; i < 10; i++) {
+            assertThat(limiter.tryAcquire("10.0.0.2", "github")).isZero();
+        }
+        assertThat(limiter.trackedIps()).isEqualTo(1);
+        assertThat(limiter.untracked()).isEqualTo(10);
+    }
+
+    @Test
+    void fullMapSweepsInlineAtMostOncePerInterval() {
+        // Ten permits per second per IP: a bucket refills 100 ms after its only request
+        LoginRateLimiter limiter = new LoginRateLimiter(true, new LoginRateLimiter.Limit(10, Duration.ofSeconds(1), 3),
+                new LoginRateLimiter.Limit(1_000_000, Duration.ofSeconds(1), 1_000_000), 1, clock::get, List.of("github"));
+        limiter.tryAcquire("10.0.0.1", "github");
+
+        // The map is full; this sweep finds nothing to remove and the next one is a second away
+        assertThat(limiter.tryAcquire("10.0.0.2", "github")).isZero();
+        clock.addAndGet(SECOND / 5);
+        // 10.0.0.1 has refilled, but no sweep is due yet
+        assertThat(limiter.tryAcquire("10.0.0.3", "github")).isZero();
+        assertThat(limiter.trackedIps()).isEqualTo(1);
+        assertThat(limiter.untracked()).isEqualTo(2);
+
+        clock.addAndGet(LoginRateLimiter.INLINE_SWEEP_INTERVAL_NANOS);
+        assertThat(limiter.tryAcquire("10.0.0.4", "github")).isZero();
+        assertThat(limiter.untracked()).isEqualTo(2);
+        assertThat(limiter.trackedIps()).isEqualTo(1);
+        // 10.0.0.4 took the freed slot
+        for (int i = 0; i < 3; i++) {
+            limiter.tryAcquire("10.0.0.4", "github");
+        }
+        assertThat(limiter.tryAcquire("10.0.0.4", "github")).isPositive();
+    }
+
+    @Test
+    void providerBucketsStartFullWhateverTheClockOrigin() {
+        clock.set(-1_000_000 * SECOND);
+        LoginRateLimiter limiter = limiter(100, new LoginRateLimiter.Limit(1, Duration.ofSeconds(1), 2), 100);
+
+        assertThat(limiter.tryAcquire("10.0.0.1", "github")).isZero();
+        assertThat(limiter.tryAcquire("10.0.0.2", "github")).isZero();
+        assertThat(limiter.tryAcquire("10.0.0.3", "github")).isPositive();
+    }
+
+    @Test
+    void disabledAdmitsEverything() {
+        LoginRateLimiter limiter = new LoginRateLimiter(false, new LoginRateLimiter.Limit(1, Duration.ofHours(1), 1),
+                new LoginRateLimiter.Limit(1, Duration.ofHours(1), 1), 100, clock::get, List.of());
+
+        for (int i = 0; i < 10; i++) {
+            assertThat(limiter.tryAcquire("10.0.0.1", "github")).isZero();
+        }
+        assertThat(limiter.trackedIps()).isZero();
+    }
+}
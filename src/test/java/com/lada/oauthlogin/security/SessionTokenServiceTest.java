@@ -0,0 +1,71 @@
+package com.lada.oauthlogin.security;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.security.oauth2.client.authentication.OAuth2AuthenticationToken;
+
+import java.time.Duration;
+import java.util.Base64;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SessionTokenServiceTest {
+
+    private static final String KEY_A = Base64.getEncoder().encodeToString("0123456789abcdef0123456789abcdef".getBytes());
+    private static final String KEY_B = Base64.getEncoder().encodeToString("fedcba9876543210fedcba9876543210".getBytes());
+
+    private final SessionTokenService tokens = new SessionTokenService(KEY_A, List.of(), Duration.ofHours(1));
+
+    @Test
+    void roundTripsIdentityClaims() {
+        String token = tokens.issue(42L, "github", "octocat", "583231");
+
+        SessionTokenService.Claims claims = tokens.verify(token).orElseThrow();
+        assertThat(claims.userId()).isEqualTo(42L);
+        assertThat(claims.provider()).isEqualTo("github");
+        assertThat(claims.email()).isEqualTo("octocat");
+        assertThat(claims.providerUserId()).isEqualTo("583231");
+    }
+
+    @Test
+    void principalNameIsTheProviderUserIdAsInSessionMode() {
+        OAuth2AuthenticationToken auth = tokens.authentication(
+                tokens.verify(tokens.issue(42L, "github", "octocat", "583231")).orElseThrow());
+
+        assertThat(auth.getName()).isEqualTo("583231");
+        assertThat(auth.getAuthorizedClientRegistrationId()).isEqualTo("github");
+        assertThat(((AppUserPrincipal) auth.getPrincipal()).getUserId()).isEqualTo(42L);
+    }
+
+    @Test
+    void rejectsTamperedPayloadAndSignature() {
+        String token = tokens.issue(42L, "github", "octocat", "583231");
+        int first = token.indexOf('.');
+        int last = token.lastIndexOf('.');
+        String otherPayload = tokens.issue(43L, "github", "octocat", "583231").substring(first + 1, last);
+
+        assertThat(tokens.verify(token.substring(0, first + 1) + otherPayload + token.substring(last))).isEmpty();
+        assertThat(tokens.verify(token.substring(0, last + 1) + "AAAA")).isEmpty();
+        assertThat(tokens.verify("garbage")).isEmpty();
+        assertThat(tokens.verify(null)).isEmpty();
+    }
+
+    @Test
+    void rejectsExpiredTokens() {
+        SessionTokenService expired = new SessionTokenService(KEY_A, List.of(), Duration.ofSeconds(-1));
+
+        assertThat(expired.verify(expired.issue(42L, "github", "octocat", "583231"))).isEmpty();
+    }
+
+    @Test
+    void previousSecretsStillVerifyDuringRotation() {
+        SessionTokenService old = new SessionTokenService(KEY_A, List.of(), Duration.ofHours(1));
+        SessionTokenService rotated = new SessionTokenService(KEY_B, List.of(KEY_A), Duration.ofHours(1));
+        SessionTokenService unrelated = new SessionTokenService(KEY_B, List.of(), Duration.ofHours(1));
+
+        String token = old.issue(42L, "github", "octocat", "583231");
+
+        assertThat(rotated.verify(token)).isPresent();
+        assertThat(unrelated.verify(token)).isEmpty();
+    }
+}
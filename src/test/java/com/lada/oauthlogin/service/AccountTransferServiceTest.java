@@ -0,0 +1,80 @@
+package com.lada.oauthlogin.service;
+
+import com.lada.oauthlogin.service.AccountTransferService.ImportResult;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@JdbcTest(properties = "spring.flyway.locations=classpath:db/migration/{vendor}")
+@Import(AccountTransferService.class)
+@ImportAutoConfiguration(JacksonAutoConfiguration.class)
+class AccountTransferServiceTest {
+
+    @Autowired
+    AccountTransferService transfer;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    private ImportResult importLines(String... lines) {
+        byte[] ndjson = String.join("\n", lines).getBytes(StandardCharsets.UTF_8);
+        return transfer.importAccounts(new ByteArrayInputStream(ndjson), 0);
+    }
+
+    @Test
+    void importsUsersWithTheirProviders() {
+        ImportResult result = importLines(
+                """
+                {"email":"octo@example.com","displayName":"Octo","providers":[{"provider":"github","providerUserId":"101"}]}""",
+                """
+                {"email":"cat@example.com","providers":[{"provider":"google","providerUserId":"g-1"}]}""");
+
+        assertThat(result.error()).isNull();
+        assertThat(result.usersCreated()).isEqualTo(2);
+        assertThat(result.providersLinked()).isEqualTo(2);
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM auth_providers", Long.class)).isEqualTo(2);
+    }
+
+    @Test
+    void laterRecordForTheSameEmailInAChunkKeepsItsProviders() {
+        ImportResult result = importLines(
+                """
+                {"email":"octo@example.com","displayName":"Octo","providers":[{"provider":"github","providerUserId":"101"}]}""",
+                """
+                {"email":"OCTO@example.com","displayName":"Other","providers":[{"provider":"google","providerUserId":"g-1"}]}""");
+
+        assertThat(result.usersCreated()).isEqualTo(1);
+        assertThat(result.usersExisting()).isEqualTo(1);
+        assertThat(result.providersLinked()).isEqualTo(2);
+        assertThat(jdbcTemplate.queryForList(
+                "SELECT provider_user_id FROM auth_providers ap JOIN users u ON u.id = ap.user_id "
+                        + "WHERE u.email = 'octo@example.com' ORDER BY provider_user_id", String.class))
+                .containsExactly("101", "g-1");
+        // The first record's profile is kept
+        assertThat(jdbcTemplate.queryForObject("SELECT display_name FROM users WHERE email = 'octo@example.com'",
+                String.class)).isEqualTo("Octo");
+    }
+
+    @Test
+    void reimportSkipsExistingUsersAndLinks() {
+        String line = """
+                {"email":"octo@example.com","providers":[{"provider":"github","providerUserId":"101"}]}""";
+        importLines(line);
+
+        ImportResult again = importLines(line);
+
+        assertThat(again.usersCreated()).isZero();
+        assertThat(again.usersExisting()).isEqualTo(1);
+        assertThat(again.providersLinked()).isZero();
+        assertThat(again.providersExisting()).isEqualTo(1);
+    }
+}
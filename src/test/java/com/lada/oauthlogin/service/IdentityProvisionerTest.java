@@ -0,0 +1,88 @@
+package com.lada.oauthlogin.service;
+
+import com.lada.oauthlogin.model.AuthProvider.Provider;
+import com.lada.oauthlogin.outbox.Outbox;
+import com.lada.oauthlogin.service.IdentityProvisioner.ProvisionResult;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/** The portable (H2) path against the Flyway schema; each test runs in a rolled-back transaction. */
+@JdbcTest(properties = "spring.flyway.locations=classpath:db/migration/{vendor}")
+@Import({IdentityProvisioner.class, Outbox.class})
+@ImportAutoConfiguration(JacksonAutoConfiguration.class)
+class IdentityProvisionerTest {
+
+    @Autowired
+    IdentityProvisioner provisioner;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Test
+    void firstLoginCreatesUserAndLinksProvider() {
+        ProvisionResult result = provisioner.provision(Provider.GITHUB, "101", "octo", "Octo Cat", "https://a/1");
+
+        assertThat(result.userId()).isNotNull();
+        assertThat(result.userCreated()).isTrue();
+        assertThat(result.providerLinked()).isTrue();
+        assertThat(result.profileBackfilled()).isFalse();
+        assertThat(outboxTypes()).containsExactly("user_created", "provider_linked");
+    }
+
+    @Test
+    void returningLoginChangesNothing() {
+        ProvisionResult first = provisioner.provision(Provider.GITHUB, "101", "octo", "Octo Cat", "https://a/1");
+        jdbcTemplate.update("DELETE FROM outbox_events");
+
+        ProvisionResult again = provisioner.provision(Provider.GITHUB, "101", "octo", "Octo Cat", "https://a/1");
+
+        assertThat(again.userId()).isEqualTo(first.userId());
+        assertThat(again.userCreated()).isFalse();
+        assertThat(again.providerLinked()).isFalse();
+        assertThat(again.profileBackfilled()).isFalse();
+        assertThat(outboxTypes()).isEmpty();
+    }
+
+    @Test
+    void secondProviderWithSameEmailLinksToExistingUser() {
+        ProvisionResult github = provisioner.provision(Provider.GITHUB, "101", "octo@example.com", "Octo", "https://a/1");
+        jdbcTemplate.update("DELETE FROM outbox_events");
+
+        ProvisionResult google = provisioner.provision(Provider.GOOGLE, "g-1", "octo@example.com", "Octo G", "https://b/1");
+
+        assertThat(google.userId()).isEqualTo(github.userId());
+        assertThat(google.userCreated()).isFalse();
+        assertThat(google.providerLinked()).isTrue();
+        assertThat(outboxTypes()).containsExactly("provider_linked");
+        // The first provider's profile is kept
+        assertThat(jdbcTemplate.queryForObject("SELECT display_name FROM users WHERE id = ?", String.class,
+                github.userId())).isEqualTo("Octo");
+    }
+
+    @Test
+    void blankProfileFieldsAreBackfilled() {
+        ProvisionResult first = provisioner.provision(Provider.GITHUB, "101", "octo", null, null);
+        jdbcTemplate.update("DELETE FROM outbox_events");
+
+        ProvisionResult again = provisioner.provision(Provider.GITHUB, "101", "octo", "Octo Cat", "https://a/1");
+
+        assertThat(again.userId()).isEqualTo(first.userId());
+        assertThat(again.profileBackfilled()).isTrue();
+        assertThat(outboxTypes()).containsExactly("profile_backfilled");
+        assertThat(jdbcTemplate.queryForObject("SELECT avatar_url FROM users WHERE id = ?", String.class,
+                first.userId())).isEqualTo("https://a/1");
+    }
+
+    private List<String> outboxTypes() {
+        return jdbcTemplate.queryForList("SELECT event_type FROM outbox_events ORDER BY id", String.class);
+    }
+}
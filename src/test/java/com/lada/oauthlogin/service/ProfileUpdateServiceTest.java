@@ -0,0 +1,138 @@
+package com.lada.oauthlogin.service;
+
+import com.lada.oauthlogin.cache.IdentityCache;
+import com.lada.oauthlogin.cache.IdentityCache.CachedUser;
+import com.lada.oauthlogin.datasource.ReadYourWrites;
+import com.lada.oauthlogin.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/** Each test runs in a rolled-back transaction, so cache writes (deferred to commit) are not observed here. */
+@DataJpaTest(properties = "spring.flyway.locations=classpath:db/migration/{vendor}")
+@Import({ProfileQueryService.class, IdentityCache.class, ReadYourWrites.class})
+class ProfileUpdateServiceTest {
+
+    @Autowired
+    UserRepository userRepository;
+
+    @Autowired
+    ProfileQueryService profileQueryService;
+
+    @Autowired
+    IdentityCache identityCache;
+
+    @Autowired
+    ReadYourWrites readYourWrites;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    TestEntityManager entityManager;
+
+    private long userId;
+
+    @BeforeEach
+    void createUser() {
+        OffsetDateTime now = OffsetDateTime.now(ZoneOffset.UTC);
+        jdbcTemplate.update("INSERT INTO users (email, display_name, avatar_url, bio, created_at, updated_at) "
+                + "VALUES ('octo@example.com', 'Octo', NULL, 'old bio', ?, ?)", now, now);
+        userId = jdbcTemplate.queryForObject("SELECT id FROM users WHERE email = 'octo@example.com'", Long.class);
+    }
+
+    private ProfileUpdateService service(String mode, Duration maxDelay) {
+        return new ProfileUpdateService(userRepository, profileQueryService, identityCache, jdbcTemplate,
+                readYourWrites, mode, maxDelay, 500, 10_000);
+    }
+
+    private String stored(String column) {
+        return jdbcTemplate.queryForObject("SELECT " + column + " FROM users WHERE id = ?", String.class, userId);
+    }
+
+    @Test
+    void syncModeSavesBeforeReturning() {
+        CachedUser updated = service("sync", Duration.ofSeconds(1))
+                .update(userId, "octo@example.com", " New Name ", null).orElseThrow();
+        entityManager.flush();
+
+        assertThat(updated.displayName()).isEqualTo("New Name");
+        assertThat(stored("display_name")).isEqualTo("New Name");
+        assertThat(stored("bio")).isEqualTo("old bio");
+    }
+
+    @Test
+    void coalesceMergesEditsAndWritesThemOnFlush() {
+        ProfileUpdateService service = service("coalesce", Duration.ofHours(1));
+
+        service.update(userId, "octo@example.com", "New Name", null);
+        CachedUser merged = service.update(userId, "octo@example.com", null, "new bio").orElseThrow();
+
+        assertThat(merged.displayName()).isEqualTo("New Name");
+        assertThat(merged.bio()).isEqualTo("new bio");
+        assertThat(service.pendingCount()).isEqualTo(1);
+        assertThat(stored("display_name")).isEqualTo("Octo");
+
+        service.flushAll();
+
+        assertThat(service.pendingCount()).isZero();
+        assertThat(stored("display_name")).isEqualTo("New Name");
+        assertThat(stored("bio")).isEqualTo("new bio");
+    }
+
+    @Test
+    void flushKeepsFieldsEditedElsewhereSinceTheMergeStarted() {
+        ProfileUpdateService service = service("coalesce", Duration.ofHours(1));
+        service.update(userId, "octo@example.com", "New Name", null);
+
+        // Another node saves a bio after this node took its base snapshot
+        jdbcTemplate.update("UPDATE users SET bio = 'bio from another node' WHERE id = ?", userId);
+        service.flushAll();
+
+        assertThat(stored("display_name")).isEqualTo("New Name");
+        assertThat(stored("bio")).isEqualTo("bio from another node");
+    }
+
+    @Test
+    void coalesceIgnoresEditsThatChangeNothing() {
+        ProfileUpdateService service = service("coalesce", Duration.ofHours(1));
+
+        CachedUser unchanged = service.update(userId, "octo@example.com", "Octo", "old bio").orElseThrow();
+
+        assertThat(unchanged.displayName()).isEqualTo("Octo");
+        assertThat(service.pendingCount()).isZero();
+    }
+
+    @Test
+    void flushDueOnlyWritesEditsOlderThanMaxDelay() {
+        ProfileUpdateService waiting = service("coalesce", Duration.ofHours(1));
+        waiting.update(userId, "octo@example.com", "New Name", null);
+        waiting.flushDue();
+        assertThat(waiting.pendingCount()).isEqualTo(1);
+        assertThat(stored("display_name")).isEqualTo("Octo");
+
+        ProfileUpdateService due = service("coalesce", Duration.ZERO);
+        due.update(userId, "octo@example.com", "Other Name", null);
+        due.flushDue();
+        assertThat(due.pendingCount()).isZero();
+        assertThat(stored("display_name")).isEqualTo("Other Name");
+    }
+
+    @Test
+    void unknownUserIsEmpty() {
+        assertThat(service("coalesce", Duration.ofHours(1)).update(userId + 1, "nobody@example.com", "X", null))
+                .isEmpty();
+        assertThat(service("sync", Duration.ofSeconds(1)).update(userId + 1, "nobody@example.com", "X", null))
+                .isEmpty();
+    }
+}
@@ -0,0 +1,82 @@
+package com.lada.oauthlogin.session;
+
+import com.lada.oauthlogin.cache.BoundedTtlCache;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/** Two repositories with their own near-caches over one table, as on two nodes. */
+@DataJpaTest(properties = {
+        "spring.flyway.locations=classpath:db/migration/{vendor}",
+        "spring.jpa.hibernate.ddl-auto=validate"})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class JpaSessionRepositoryTest {
+
+    @Autowired
+    SessionRecordRepository records;
+
+    @AfterEach
+    void cleanUp() {
+        records.deleteAll();
+    }
+
+    private JpaSessionRepository node() {
+        return new JpaSessionRepository(records, Duration.ofMinutes(30), Duration.ofMinutes(1),
+                new BoundedTtlCache<>(100, Duration.ofMinutes(5)));
+    }
+
+    @Test
+    void attributeWrittenOnOneNodeIsSeenOnTheOther() {
+        JpaSessionRepository a = node();
+        JpaSessionRepository b = node();
+        StoredSession created = a.createSession();
+        a.save(created);
+        // b now holds a copy without the attribute
+        assertThat(b.findById(created.getId()).<Object>getAttribute("authorizationRequest")).isNull();
+
+        StoredSession onA = a.findById(created.getId());
+        onA.setAttribute("authorizationRequest", "state-1");
+        a.save(onA);
+
+        assertThat(b.findById(created.getId()).<Object>getAttribute("authorizationRequest")).isEqualTo("state-1");
+    }
+
+    @Test
+    void deleteOnOneNodeIsSeenOnTheOther() {
+        JpaSessionRepository a = node();
+        JpaSessionRepository b = node();
+        StoredSession created = a.createSession();
+        created.setAttribute("k", "v");
+        a.save(created);
+        assertThat(b.findById(created.getId())).isNotNull();
+
+        a.deleteById(created.getId());
+
+        assertThat(b.findById(created.getId())).isNull();
+    }
+
+    @Test
+    void touchKeepsTheRevisionAndAttributeWritesChangeIt() {
+        JpaSessionRepository a = node();
+        StoredSession session = a.createSession();
+        session.setAttribute("k", "v");
+        a.save(session);
+        long revision = records.findRevision(session.getId()).orElseThrow();
+
+        session.setLastAccessedTime(session.getLastAccessedTime().plus(Duration.ofMinutes(2)));
+        a.save(session);
+        assertThat(records.findRevision(session.getId())).contains(revision);
+
+        session.setAttribute("k", "w");
+        a.save(session);
+        assertThat(records.findRevision(session.getId())).isPresent().get().isNotEqualTo(revision);
+        assertThat(node().findById(session.getId()).<Object>getAttribute("k")).isEqualTo("w");
+    }
+}
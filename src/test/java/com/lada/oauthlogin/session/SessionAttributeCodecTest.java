@@ -0,0 +1,93 @@
+package com.lada.oauthlogin.session;
+
+import com.lada.oauthlogin.security.AppUserPrincipal;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextImpl;
+import org.springframework.security.oauth2.client.authentication.OAuth2AuthenticationToken;
+import org.springframework.security.oauth2.core.endpoint.OAuth2AuthorizationRequest;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SessionAttributeCodecTest {
+
+    private static Object roundTrip(Object value) {
+        Map<String, Object> attributes = new HashMap<>();
+        attributes.put("a", value);
+        return SessionAttributeCodec.decode(SessionAttributeCodec.encode(attributes)).get("a");
+    }
+
+    @Test
+    void scalarsRoundTrip() {
+        assertThat(roundTrip("text")).isEqualTo("text");
+        assertThat(roundTrip(42L)).isEqualTo(42L);
+        assertThat(roundTrip(7)).isEqualTo(7);
+        assertThat(roundTrip(true)).isEqualTo(true);
+        assertThat(roundTrip(null)).isNull();
+    }
+
+    @Test
+    void collectionsKeepTheirConcreteType() {
+        HashMap<String, Object> hashMap = new HashMap<>(Map.of("k", 1));
+        LinkedHashMap<String, Object> linkedMap = new LinkedHashMap<>(Map.of("k", 1));
+        ArrayList<Object> arrayList = new ArrayList<>(List.of("x", new HashMap<>(Map.of("k", 2))));
+
+        assertThat(roundTrip(hashMap)).isExactlyInstanceOf(HashMap.class).isEqualTo(hashMap);
+        assertThat(roundTrip(linkedMap)).isExactlyInstanceOf(LinkedHashMap.class).isEqualTo(linkedMap);
+        assertThat(roundTrip(arrayList)).isExactlyInstanceOf(ArrayList.class).isEqualTo(arrayList);
+        // Nested values of an attribute keep their type as well
+        assertThat(((List<?>) roundTrip(arrayList)).get(1)).isExactlyInstanceOf(HashMap.class);
+    }
+
+    @Test
+    void unmodifiableListStaysUnmodifiable() {
+        List<String> list = List.of("a", "b");
+
+        Object decoded = roundTrip(list);
+
+        assertThat(decoded).isExactlyInstanceOf(list.getClass()).isEqualTo(list);
+    }
+
+    @Test
+    void appSecurityContextRoundTrips() {
+        AppUserPrincipal principal = new AppUserPrincipal(42L, "github", "octo@example.com", "Octo", null,
+                "583231", AppUserPrincipal.USER_AUTHORITIES, Map.of("id", 583231));
+        SecurityContext ctx = new SecurityContextImpl(
+                new OAuth2AuthenticationToken(principal, AppUserPrincipal.USER_AUTHORITIES, "github"));
+
+        SecurityContext decoded = (SecurityContext) roundTrip(ctx);
+
+        OAuth2AuthenticationToken token = (OAuth2AuthenticationToken) decoded.getAuthentication();
+        assertThat(token.getAuthorizedClientRegistrationId()).isEqualTo("github");
+        assertThat(token.getName()).isEqualTo("583231");
+        AppUserPrincipal restored = (AppUserPrincipal) token.getPrincipal();
+        assertThat(restored.getUserId()).isEqualTo(42L);
+        assertThat(restored.getEmail()).isEqualTo("octo@example.com");
+        assertThat(restored.getDisplayName()).isEqualTo("Octo");
+        assertThat(restored.getAvatarUrl()).isNull();
+        assertThat(restored.getAuthorities()).isEqualTo(AppUserPrincipal.USER_AUTHORITIES);
+    }
+
+    @Test
+    void authorizationRequestRoundTrips() {
+        OAuth2AuthorizationRequest request = OAuth2AuthorizationRequest.authorizationCode()
+                .authorizationUri("https://github.com/login/oauth/authorize")
+                .clientId("client")
+                .redirectUri("https://app.example.com/login/oauth2/code/github")
+                .state("state-1")
+                .attributes(a -> a.put("registration_id", "github"))
+                .build();
+
+        OAuth2AuthorizationRequest decoded = (OAuth2AuthorizationRequest) roundTrip(request);
+
+        assertThat(decoded.getState()).isEqualTo("state-1");
+        assertThat(decoded.getRedirectUri()).isEqualTo(request.getRedirectUri());
+        assertThat(decoded.getAttributes()).isEqualTo(request.getAttributes());
+    }
+}
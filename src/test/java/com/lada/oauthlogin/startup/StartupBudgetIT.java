@@ -0,0 +1,165 @@
+package com.lada.oauthlogin.startup;
+
+import com.lada.oauthlogin.support.ProviderEmulator;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Launches the extracted jar from the {@code aot-cds} profile twice, as a plain JVM start and with AOT + the
+ * CDS archive, and measures time from process launch to readiness and to the first completed GitHub login
+ * against the {@link ProviderEmulator}. Fails the build when the fast start exceeds its budgets.
+ * Run with: mvn -Paot-cds verify
+ */
+class StartupBudgetIT {
+
+    private static final Path JAR = Path.of(System.getProperty("startup.jar", "target/cds/app.jar"));
+    private static final Path CDS_ARCHIVE = Path.of(System.getProperty("startup.cds-archive", "target/cds/application.jsa"));
+    private static final long MAX_READY_MS = Long.getLong("startup.max-ready-ms", 6000);
+    private static final long MAX_FIRST_LOGIN_MS = Long.getLong("startup.max-first-login-ms", 8000);
+    private static final Pattern STARTED = Pattern.compile("Started \\w+ in ([\\d.]+) seconds");
+
+    private record Timings(String mode, double reportedStartSeconds, long readyMs, long firstLoginMs) {}
+
+    private static ProviderEmulator emulator;
+
+    private final HttpClient http = HttpClient.newBuilder()
+            .followRedirects(HttpClient.Redirect.NEVER)
+            .connectTimeout(Duration.ofSeconds(1))
+            .build();
+
+    @BeforeAll
+    static void startEmulator() throws IOException {
+        emulator = new ProviderEmulator(Duration.ZERO);
+    }
+
+    @AfterAll
+    static void stopEmulator() {
+        emulator.close();
+    }
+
+    @Test
+    void fastStartStaysWithinBudget() throws Exception {
+        Timings jvm = launch("jvm", List.of());
+        Timings fast = launch("aot-cds", List.of("-XX:SharedArchiveFile=" + CDS_ARCHIVE, "-Dspring.aot.enabled=true"));
+
+        for (Timings t : List.of(jvm, fast)) {
+            System.out.printf("startup mode=%s started=%.2fs ready=%dms first-login=%dms%n",
+                    t.mode(), t.reportedStartSeconds(), t.readyMs(), t.firstLoginMs());
+        }
+        System.out.printf("startup aot-cds vs jvm: ready %.0f%%, first-login %.0f%%%n",
+                100.0 * fast.readyMs() / jvm.readyMs(), 100.0 * fast.firstLoginMs() / jvm.firstLoginMs());
+
+        assertThat(fast.readyMs()).as("aot-cds time to readiness (ms)").isLessThanOrEqualTo(MAX_READY_MS);
+        assertThat(fast.firstLoginMs()).as("aot-cds time to first login (ms)").isLessThanOrEqualTo(MAX_FIRST_LOGIN_MS);
+    }
+
+    private Timings launch(String mode, List<String> jvmOptions) throws Exception {
+        int port = freePort();
+        Path log = JAR.resolveSibling("startup-" + mode + ".log");
+
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(jvmOptions);
+        command.add("-jar");
+        command.add(JAR.toString());
+        command.add("--server.port=" + port);
+        command.add("--spring.datasource.url=jdbc:h2:mem:startup;DB_CLOSE_DELAY=-1");
+        emulator.clientProperties().forEach((key, value) -> command.add("--" + key + "=" + value));
+
+        long launched = System.nanoTime();
+        Process app = new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(log.toFile()).start();
+        try {
+            URI base = URI.create("http://127.0.0.1:" + port);
+            awaitReady(base.resolve("/actuator/health/readiness"), app);
+            long readyMs = elapsedMs(launched);
+            login(base);
+            long firstLoginMs = elapsedMs(launched);
+
+            Matcher started = STARTED.matcher(Files.readString(log));
+            double reported = started.find() ? Double.parseDouble(started.group(1)) : Double.NaN;
+            return new Timings(mode, reported, readyMs, firstLoginMs);
+        } finally {
+            app.destroy();
+            app.waitFor();
+        }
+    }
+
+    private void awaitReady(URI readiness, Process app) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(60).toNanos();
+        while (System.nanoTime() < deadline) {
+            assertThat(app.isAlive()).as("application process exited during startup").isTrue();
+            try {
+                if (http.send(HttpRequest.newBuilder(readiness).build(), HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+                    return;
+                }
+            } catch (IOException notListeningYet) {
+                // keep polling
+            }
+            Thread.sleep(10);
+        }
+        throw new AssertionError("application not ready within 60s");
+    }
+
+    // Authorization redirect, emulator approval, callback, then the first authenticated API call
+    private void login(URI base) throws IOException, InterruptedException {
+        Map<String, String> cookies = new LinkedHashMap<>();
+        URI authorize = redirect(send(base.resolve("/oauth2/authorization/github"), cookies));
+        URI callback = redirect(send(authorize, null));
+        redirect(send(callback, cookies));
+        HttpResponse<String> profile = send(base.resolve("/profile-data"), cookies);
+        assertThat(profile.statusCode()).isEqualTo(200);
+    }
+
+    private HttpResponse<String> send(URI uri, Map<String, String> cookies) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder(uri).timeout(Duration.ofSeconds(30));
+        if (cookies != null && !cookies.isEmpty()) {
+            request.header("Cookie", cookies.entrySet().stream()
+                    .map(c -> c.getKey() + "=" + c.getValue())
+                    .collect(Collectors.joining("; ")));
+        }
+        HttpResponse<String> response = http.send(request.build(), HttpResponse.BodyHandlers.ofString());
+        if (cookies != null) {
+            for (String header : response.headers().allValues("Set-Cookie")) {
+                String pair = header.split(";", 2)[0];
+                int eq = pair.indexOf('=');
+                cookies.put(pair.substring(0, eq).trim(), pair.substring(eq + 1).trim());
+            }
+        }
+        return response;
+    }
+
+    private static URI redirect(HttpResponse<String> response) {
+        assertThat(response.statusCode()).as("redirect from %s", response.uri()).isEqualTo(302);
+        return response.uri().resolve(response.headers().firstValue("Location").orElseThrow());
+    }
+
+    private static long elapsedMs(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
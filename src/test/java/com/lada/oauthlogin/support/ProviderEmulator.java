@@ -0,0 +1,261 @@
+package com.lada.oauthlogin.support;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Local stand-in for GitHub (OAuth2) and Google (OIDC): authorization, token, user-info and JWKS endpoints.
+ * The authorization endpoint auto-approves and hands out user numbers in sequence (cycling through
+ * {@code userPool} users when it is positive, so later logins are returning users), and the bearer token
+ * "tok-N" maps to user N. Google ID tokens are RS256-signed with the key published at {@code /google/jwks}
+ * and use the real Google issuer, so the stock registration validates them unchanged. Avatar URLs point
+ * back at {@code /avatars/...}, which serves one 460x460 PNG (the size GitHub serves by default).
+ */
+public class ProviderEmulator implements AutoCloseable {
+
+    public static final String GOOGLE_ISSUER = "https://accounts.google.com";
+
+    private static final String[] PROVIDERS = {"github", "google"};
+
+    private record Grant(int user, String clientId, String nonce) {}
+
+    private final HttpServer server;
+    private final Duration latency;
+    private final RSAKey signingKey;
+    private final int userPool;
+    private final AtomicInteger nextUser = new AtomicInteger();
+    private final AtomicInteger nextCode = new AtomicInteger();
+    private final Map<String, Grant> grants = new ConcurrentHashMap<>();
+    private final byte[] avatar = avatarPng();
+
+    public ProviderEmulator(Duration latency) throws IOException {
+        this(latency, 0);
+    }
+
+    public ProviderEmulator(Duration latency, int userPool) throws IOException {
+        this.latency = latency;
+        this.userPool = userPool;
+        try {
+            this.signingKey = new RSAKeyGenerator(2048).keyID("emulator-1").generate();
+        } catch (JOSEException e) {
+            throw new IllegalStateException(e);
+        }
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 4096);
+        for (String provider : PROVIDERS) {
+            this.server.createContext("/" + provider + "/authorize", this::authorize);
+            this.server.createContext("/" + provider + "/token", exchange -> token(exchange, provider));
+        }
+        this.server.createContext("/github/user", this::githubUser);
+        this.server.createContext("/google/userinfo", this::googleUser);
+        this.server.createContext("/google/jwks", this::jwks);
+        this.server.createContext("/avatars/", this::avatar);
+        this.server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        this.server.start();
+    }
+
+    public String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    /** Spring Boot properties that point the github and google registrations at this emulator. */
+    public Map<String, String> clientProperties() {
+        String base = baseUrl();
+        Map<String, String> props = new HashMap<>();
+        for (String provider : PROVIDERS) {
+            String registration = "spring.security.oauth2.client.registration." + provider;
+            String details = "spring.security.oauth2.client.provider." + provider;
+            props.put(registration + ".client-id", provider + "-emulated");
+            props.put(registration + ".client-secret", "emulated");
+            props.put(details + ".authorization-uri", base + "/" + provider + "/authorize");
+            props.put(details + ".token-uri", base + "/" + provider + "/token");
+        }
+        props.put("spring.security.oauth2.client.provider.github.user-info-uri", base + "/github/user");
+        props.put("spring.security.oauth2.client.provider.google.user-info-uri", base + "/google/userinfo");
+        props.put("spring.security.oauth2.client.provider.google.jwk-set-uri", base + "/google/jwks");
+        // Avatar URLs point back at the emulator
+        props.put("app.avatar.allowed-hosts", "127.0.0.1");
+        return props;
+    }
+
+    private void authorize(HttpExchange exchange) throws IOException {
+        Map<String, String> query = parse(exchange.getRequestURI().getRawQuery());
+        String code = "code-" + nextCode.incrementAndGet();
+        int user = userPool > 0 ? nextUser.getAndIncrement() % userPool : nextUser.getAndIncrement();
+        grants.put(code, new Grant(user, query.get("client_id"), query.get("nonce")));
+
+        String location = query.get("redirect_uri")
+                + "?code=" + code
+                + "&state=" + URLEncoder.encode(query.get("state"), StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Location", location);
+        exchange.sendResponseHeaders(302, -1);
+        exchange.close();
+    }
+
+    private void token(HttpExchange exchange, String provider) throws IOException {
+        Map<String, String> form;
+        try (InputStream in = exchange.getRequestBody()) {
+            form = parse(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+        Grant grant = grants.remove(form.get("code"));
+        if (grant == null) {
+            respond(exchange, 400, "{\"error\": \"invalid_grant\"}");
+            return;
+        }
+        sleep();
+
+        StringBuilder json = new StringBuilder()
+                .append("{\"access_token\": \"tok-").append(grant.user())
+                .append("\", \"token_type\": \"Bearer\", \"expires_in\": 3600");
+        if (provider.equals("google")) {
+            json.append(", \"scope\": \"openid profile email\", \"id_token\": \"").append(idToken(grant)).append('"');
+        } else {
+            json.append(", \"scope\": \"read:user user:email\"");
+        }
+        respond(exchange, 200, json.append('}').toString());
+    }
+
+    private void githubUser(HttpExchange exchange) throws IOException {
+        String n = userNumber(exchange);
+        sleep();
+        respond(exchange, 200, """
+                {"id": %s, "login": "loaduser%s", "name": "Load User %s", "avatar_url": "%s/avatars/github/%s"}
+                """.formatted(n, n, n, baseUrl(), n));
+    }
+
+    // Same login identifier as the GitHub shape, so a Google login for user N links to the GitHub user N
+    private void googleUser(HttpExchange exchange) throws IOException {
+        String n = userNumber(exchange);
+        sleep();
+        respond(exchange, 200, """
+                {"sub": "g%s", "email": "loaduser%s", "email_verified": true, "name": "Load User %s", "picture": "%s/avatars/google/%s"}
+                """.formatted(n, n, n, baseUrl(), n));
+    }
+
+    private void jwks(HttpExchange exchange) throws IOException {
+        respond(exchange, 200, new JWKSet(signingKey.toPublicJWK()).toString());
+    }
+
+    private String idToken(Grant grant) {
+        Instant now = Instant.now();
+        JWTClaimsSet.Builder claims = new JWTClaimsSet.Builder()
+                .issuer(GOOGLE_ISSUER)
+                .subject("g" + grant.user())
+                .audience(grant.clientId())
+                .issueTime(Date.from(now))
+                .expirationTime(Date.from(now.plusSeconds(3600)))
+                .claim("email", "loaduser" + grant.user())
+                .claim("email_verified", true)
+                .claim("name", "Load User " + grant.user())
+                .claim("picture", baseUrl() + "/avatars/google/" + grant.user());
+        if (grant.nonce() != null) {
+            claims.claim("nonce", grant.nonce());
+        }
+        try {
+            SignedJWT jwt = new SignedJWT(
+                    new JWSHeader.Builder(JWSAlgorithm.RS256).keyID(signingKey.getKeyID()).build(), claims.build());
+            jwt.sign(new RSASSASigner(signingKey));
+            return jwt.serialize();
+        } catch (JOSEException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String userNumber(HttpExchange exchange) {
+        String auth = exchange.getRequestHeaders().getFirst("Authorization");
+        return auth != null && auth.startsWith("Bearer tok-") ? auth.substring("Bearer tok-".length()) : "0";
+    }
+
+    private static Map<String, String> parse(String encoded) {
+        Map<String, String> params = new HashMap<>();
+        if (encoded == null || encoded.isEmpty()) {
+            return params;
+        }
+        for (String pair : encoded.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = eq < 0 ? pair : pair.substring(0, eq);
+            String value = eq < 0 ? "" : pair.substring(eq + 1);
+            params.put(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+
+    private void avatar(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "image/png");
+        exchange.sendResponseHeaders(200, avatar.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(avatar);
+        }
+    }
+
+    private static byte[] avatarPng() {
+        BufferedImage image = new BufferedImage(460, 460, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(new Color(0x2f81f7));
+        g.fillRect(0, 0, 460, 460);
+        g.setColor(Color.WHITE);
+        g.fillOval(130, 80, 200, 200);
+        g.dispose();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            ImageIO.write(image, "png", out);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private static void respond(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private void sleep() {
+        if (latency.isZero()) {
+            return;
+        }
+        try {
+            Thread.sleep(latency);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}